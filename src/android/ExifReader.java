@@ -0,0 +1,119 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.content.ContentResolver;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads every EXIF tag of a file in a single parse and memoizes the result by file identity
+ * (path + size + modification date, or the MediaStore identity of a content URI), so asking
+ * for other keys of the same file later costs no I/O.
+ */
+class ExifReader {
+
+    private static final int MAX_ENTRIES = 256;
+
+    private final ContentResolver resolver;
+
+    // Ordre d'accès : les fichiers les moins récemment lus sortent en premier
+    private final Map<String, Map<String, String>> memo =
+        new LinkedHashMap<String, Map<String, String>>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, String>> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+    ExifReader(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * @param location content:// URI, file:// URI or absolute path
+     * @param info     MediaStore identity of a content URI (may be null)
+     * @return all tags present in the file
+     */
+    Map<String, String> read(String location, MediaInfoResolver.MediaInfo info) throws IOException {
+        Uri uri = Uri.parse(location);
+        boolean content = ContentResolver.SCHEME_CONTENT.equals(uri.getScheme());
+        File file = content ? null : new File(uri.getScheme() == null ? location : uri.getPath());
+
+        String identity = identityOf(uri, file, info);
+        if (identity != null) {
+            synchronized (memo) {
+                Map<String, String> cached = memo.get(identity);
+                if (cached != null) return cached;
+            }
+        }
+
+        Map<String, String> tags = collect(content ? open(uri) : new ExifInterface(file.getAbsolutePath()));
+        if (identity != null) {
+            synchronized (memo) {
+                memo.put(identity, tags);
+            }
+        }
+        return tags;
+    }
+
+    // Sous-ensemble demandé (toutes les balises si keys est null)
+    static JSONObject select(Map<String, String> tags, List<String> keys) throws JSONException {
+        JSONObject result = new JSONObject();
+        if (keys == null) {
+            for (Map.Entry<String, String> entry : tags.entrySet()) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        } else {
+            for (String key : keys) {
+                String value = tags.get(key);
+                if (value != null) result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    private ExifInterface open(Uri uri) throws IOException {
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            if (pfd != null) return new ExifInterface(pfd.getFileDescriptor());
+        } catch (IOException | RuntimeException e) {
+            // Descripteur non seekable (provider distant) : lecture en flux
+        }
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) throw new IOException("Cannot open " + uri);
+            return new ExifInterface(in);
+        }
+    }
+
+    private static Map<String, String> collect(ExifInterface exif) {
+        Map<String, String> tags = new HashMap<>();
+        for (String tag : ExifTags.ALL) {
+            String value = exif.getAttribute(tag);
+            if (value != null) tags.put(tag, value);
+        }
+        return Collections.unmodifiableMap(tags);
+    }
+
+    // null : identité inconnue, le résultat n'est pas mémorisé
+    private static String identityOf(Uri uri, File file, MediaInfoResolver.MediaInfo info) {
+        if (file != null) {
+            if (!file.exists()) return null;
+            return "file:" + file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+        }
+        if (info != null && (info.size > 0 || info.dateModified > 0)) {
+            return MediaCacheIndex.keyFor(uri, info.size, info.dateModified);
+        }
+        return null;
+    }
+}
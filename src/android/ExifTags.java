@@ -0,0 +1,78 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.media.ExifInterface;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * EXIF tag names known by the platform ExifInterface, collected once from its TAG_* constants.
+ */
+final class ExifTags {
+
+    /** Every TAG_* name of the running platform. */
+    static final List<String> ALL = Collections.unmodifiableList(collect());
+
+    /**
+     * Tags describing the pixels or the embedded thumbnail of the source file:
+     * they must not be carried over to a re-encoded image.
+     */
+    private static final Set<String> LAYOUT = new HashSet<>(Arrays.asList(
+        ExifInterface.TAG_IMAGE_WIDTH,
+        ExifInterface.TAG_IMAGE_LENGTH,
+        ExifInterface.TAG_PIXEL_X_DIMENSION,
+        ExifInterface.TAG_PIXEL_Y_DIMENSION,
+        ExifInterface.TAG_ORIENTATION,
+        ExifInterface.TAG_BITS_PER_SAMPLE,
+        ExifInterface.TAG_COMPRESSION,
+        ExifInterface.TAG_PHOTOMETRIC_INTERPRETATION,
+        ExifInterface.TAG_SAMPLES_PER_PIXEL,
+        ExifInterface.TAG_PLANAR_CONFIGURATION,
+        ExifInterface.TAG_STRIP_OFFSETS,
+        ExifInterface.TAG_STRIP_BYTE_COUNTS,
+        ExifInterface.TAG_ROWS_PER_STRIP,
+        ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT,
+        ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH,
+        ExifInterface.TAG_Y_CB_CR_SUB_SAMPLING,
+        ExifInterface.TAG_Y_CB_CR_POSITIONING,
+        "ThumbnailImageWidth",
+        "ThumbnailImageLength"
+    ));
+
+    private ExifTags() {}
+
+    /**
+     * Copies the descriptive tags (dates, GPS, camera, exposure...) of source into target.
+     * Dimensions and orientation are left to the caller.
+     */
+    static void copyDescriptive(ExifInterface source, ExifInterface target) {
+        for (String tag : ALL) {
+            if (LAYOUT.contains(tag)) continue;
+            String value = source.getAttribute(tag);
+            if (value != null) {
+                target.setAttribute(tag, value);
+            }
+        }
+    }
+
+    private static List<String> collect() {
+        List<String> tags = new ArrayList<>();
+        for (Field field : ExifInterface.class.getFields()) {
+            if (!field.getName().startsWith("TAG_") || field.getType() != String.class
+                || !Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            try {
+                String tag = (String) field.get(null);
+                if (tag != null && !tags.contains(tag)) tags.add(tag);
+            } catch (IllegalAccessException ignored) {}
+        }
+        return tags;
+    }
+}
@@ -0,0 +1,234 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageDecoder;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.util.Size;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Re-encodes an image (HEIC conversion, resize) read from a content URI into a file, with bounded
+ * memory: the source is decoded straight at the target size, never at full resolution.
+ *
+ * Android 9+ decodes through ImageDecoder with a target size and a low-RAM memory policy
+ * (RGB_565 when the image is opaque); the decoder applies the EXIF orientation to the pixels.
+ * Older versions use BitmapFactory with inSampleSize and rotate the sampled bitmap.
+ * Descriptive EXIF tags (dates, GPS, camera...) are carried over when the output is a JPEG.
+ */
+class ImageTranscoder {
+
+    private static final String TAG = "ImageTranscoder";
+
+    static class Settings {
+        int maxWidth;  // 0 : no limit
+        int maxHeight; // 0 : no limit
+        int quality = 95;
+        Bitmap.CompressFormat format = Bitmap.CompressFormat.JPEG;
+
+        String extension() {
+            return format == Bitmap.CompressFormat.JPEG ? "jpg" : format == Bitmap.CompressFormat.PNG ? "png" : "webp";
+        }
+
+        String mimeType() {
+            return format == Bitmap.CompressFormat.JPEG ? "image/jpeg"
+                : format == Bitmap.CompressFormat.PNG ? "image/png" : "image/webp";
+        }
+
+        // Distinguishes cached outputs produced with different settings
+        String signature() {
+            return maxWidth + "x" + maxHeight + "q" + quality + extension();
+        }
+    }
+
+    static class Result {
+        final int width;
+        final int height;
+
+        Result(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    // "jpeg" (default), "webp" or "png"
+    static Bitmap.CompressFormat formatFor(String name) {
+        if ("webp".equalsIgnoreCase(name)) {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+        }
+        if ("png".equalsIgnoreCase(name)) return Bitmap.CompressFormat.PNG;
+        return Bitmap.CompressFormat.JPEG;
+    }
+
+    private final ContentResolver resolver;
+
+    ImageTranscoder(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    Result transcode(Uri source, File dest, Settings settings) throws IOException {
+        Bitmap bitmap = null;
+        try {
+            bitmap = decode(source, settings);
+            if (bitmap == null) {
+                throw new IOException("Cannot decode " + source);
+            }
+
+            File partial = new File(dest.getParentFile(), dest.getName() + ".part");
+            try (FileOutputStream out = new FileOutputStream(partial)) {
+                if (!bitmap.compress(settings.format, settings.quality, out)) {
+                    throw new IOException("Cannot encode " + dest.getName());
+                }
+            } catch (IOException | RuntimeException e) {
+                partial.delete();
+                throw e;
+            }
+            if (!partial.renameTo(dest)) {
+                partial.delete();
+                throw new IOException("Cannot move " + partial.getName() + " into cache");
+            }
+
+            Result result = new Result(bitmap.getWidth(), bitmap.getHeight());
+            if (settings.format == Bitmap.CompressFormat.JPEG) {
+                copyExif(source, dest, result);
+            }
+            return result;
+        } finally {
+            if (bitmap != null) bitmap.recycle();
+        }
+    }
+
+    // Decodes the source at the size given by the settings; null when the source is not an image
+    Bitmap decode(Uri source, Settings settings) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            return decodeWithImageDecoder(source, settings);
+        }
+        return decodeSampled(source, settings);
+    }
+
+    private Bitmap decodeWithImageDecoder(Uri uri, Settings settings) throws IOException {
+        ImageDecoder.Source source = ImageDecoder.createSource(resolver, uri);
+        return ImageDecoder.decodeBitmap(source, (decoder, info, src) -> {
+            Size size = info.getSize();
+            Size target = fit(size.getWidth(), size.getHeight(), settings);
+            if (target.getWidth() != size.getWidth() || target.getHeight() != size.getHeight()) {
+                decoder.setTargetSize(target.getWidth(), target.getHeight());
+            }
+            // Bitmap.compress needs a software bitmap; RGB_565 is used when the image has no alpha
+            decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+            decoder.setMemorySizePolicy(ImageDecoder.MEMORY_POLICY_LOW_RAM);
+        });
+    }
+
+    private Bitmap decodeSampled(Uri uri, Settings settings) throws IOException {
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null) return null;
+
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeFileDescriptor(pfd.getFileDescriptor(), null, bounds);
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+            // The box applies to the displayed image: swap it when the pixels are stored rotated
+            int degrees = rotationOf(uri);
+            boolean swap = degrees == 90 || degrees == 270;
+            Size displayed = fit(swap ? bounds.outHeight : bounds.outWidth,
+                swap ? bounds.outWidth : bounds.outHeight, settings);
+            Size target = swap ? new Size(displayed.getHeight(), displayed.getWidth()) : displayed;
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, target);
+            if (settings.format == Bitmap.CompressFormat.JPEG) {
+                options.inPreferredConfig = Bitmap.Config.RGB_565;
+            }
+
+            Bitmap sampled;
+            try (ParcelFileDescriptor again = resolver.openFileDescriptor(uri, "r")) {
+                sampled = again != null ? BitmapFactory.decodeFileDescriptor(again.getFileDescriptor(), null, options) : null;
+            }
+            if (sampled == null) return null;
+
+            // inSampleSize is a power of two: finish with an exact scale, then apply the orientation
+            Matrix matrix = new Matrix();
+            if (sampled.getWidth() > target.getWidth() || sampled.getHeight() > target.getHeight()) {
+                matrix.postScale((float) target.getWidth() / sampled.getWidth(),
+                    (float) target.getHeight() / sampled.getHeight());
+            }
+            if (degrees != 0) matrix.postRotate(degrees);
+            if (matrix.isIdentity()) return sampled;
+
+            Bitmap transformed = Bitmap.createBitmap(sampled, 0, 0, sampled.getWidth(), sampled.getHeight(), matrix, true);
+            if (transformed != sampled) sampled.recycle();
+            return transformed;
+        }
+    }
+
+    private int rotationOf(Uri uri) {
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) return 0;
+            switch (new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                case ExifInterface.ORIENTATION_TRANSPOSE:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                case ExifInterface.ORIENTATION_TRANSVERSE:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    // Largest size that fits in maxWidth x maxHeight keeping the aspect ratio, never upscaled
+    static Size fit(int width, int height, Settings settings) {
+        double scale = 1.0;
+        if (settings.maxWidth > 0 && width > settings.maxWidth) {
+            scale = Math.min(scale, (double) settings.maxWidth / width);
+        }
+        if (settings.maxHeight > 0 && height > settings.maxHeight) {
+            scale = Math.min(scale, (double) settings.maxHeight / height);
+        }
+        return new Size(Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale)));
+    }
+
+    static int sampleSize(int width, int height, Size target) {
+        int sample = 1;
+        while (width / (sample * 2) >= target.getWidth() && height / (sample * 2) >= target.getHeight()) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    private void copyExif(Uri source, File dest, Result result) {
+        try (InputStream in = resolver.openInputStream(source)) {
+            if (in == null) return;
+            ExifInterface sourceExif = new ExifInterface(in);
+            ExifInterface targetExif = new ExifInterface(dest.getAbsolutePath());
+
+            ExifTags.copyDescriptive(sourceExif, targetExif);
+
+            // The pixels are already rotated by the decode
+            targetExif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(ExifInterface.ORIENTATION_NORMAL));
+            targetExif.setAttribute(ExifInterface.TAG_PIXEL_X_DIMENSION, String.valueOf(result.width));
+            targetExif.setAttribute(ExifInterface.TAG_PIXEL_Y_DIMENSION, String.valueOf(result.height));
+            targetExif.saveAttributes();
+        } catch (Exception e) {
+            Log.w(TAG, "EXIF not copied for " + dest.getName() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.net.Uri;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent index of the files the plugin writes into its cache directory.
+ *
+ * Entries are keyed by a stable identity of the source media (provider id, size and modification date),
+ * so the same photo picked again, at any position, maps to the same file. The index keeps entries in
+ * LRU order and deletes the least recently used files once the byte budget is exceeded: at startup, when
+ * the budget changes, and when a batch ends. Entries used by a batch still open are never deleted, so
+ * the file:// URIs of a call stay valid at least until its result has been sent.
+ */
+class MediaCacheIndex {
+
+    private static final String TAG = "MediaCacheIndex";
+    private static final String INDEX_FILE = "index.json";
+
+    static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+    private static final int LOCK_STRIPES = 64;
+
+    private static class Entry {
+        final String key;
+        final String fileName;
+        final long size;
+        long lastAccess;
+        String hash; // contentHash of a plain copy ("sampled:..." / "sha256:..."), null when unknown
+        long touched; // rang du dernier accès dans cette session (lots ouverts), non persisté
+
+        Entry(String key, String fileName, long size, long lastAccess) {
+            this.key = key;
+            this.fileName = fileName;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final File dir;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, String> keysByHash = new HashMap<>(); // dedup : contentHash -> clé
+    // Verrous répartis par hachage, en nombre fixe : rien à nettoyer quand une entrée disparaît
+    private final Object[] keyLocks = newStripes();
+    private final Object[] hashLocks = newStripes();
+    private long maxBytes;
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private boolean dirty;
+    private long touchCounter;
+    private final List<Long> openBatches = new ArrayList<>();
+
+    MediaCacheIndex(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Cannot create " + dir);
+        }
+        load();
+    }
+
+    /**
+     * Stable identity of a media: provider authority + document/media id, size and modification date.
+     * Unlike uri.hashCode() + index it does not depend on the position of the item in a selection.
+     */
+    static String keyFor(Uri uri, long size, long dateModified) {
+        String identity = uri.getAuthority() + "/" + uri.getLastPathSegment() + "|" + size + "|" + dateModified;
+        return sha1(identity);
+    }
+
+    static String sha1(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(value.hashCode());
+        }
+    }
+
+    File fileFor(String fileName) {
+        return new File(dir, fileName);
+    }
+
+    // Serializes the work done on one key (copy, conversion) across worker threads.
+    // Two keys can share a stripe: code holding a key lock must not take another key lock.
+    Object lockFor(String key) {
+        return keyLocks[stripe(key)];
+    }
+
+    // Serializes deduplication on one content hash; taken before lockFor, never inside it.
+    Object hashLockFor(String hash) {
+        return hashLocks[stripe(hash)];
+    }
+
+    private static Object[] newStripes() {
+        Object[] stripes = new Object[LOCK_STRIPES];
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new Object();
+        return stripes;
+    }
+
+    private static int stripe(String value) {
+        return (value.hashCode() & 0x7fffffff) % LOCK_STRIPES;
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes > 0 && maxBytes != this.maxBytes) {
+            this.maxBytes = maxBytes;
+            evict(Long.MAX_VALUE);
+            save();
+        }
+    }
+
+    // Présence sans effet sur l'ordre LRU ni sur les compteurs hits/misses
+    synchronized boolean contains(String key) {
+        Entry entry = entries.get(key);
+        return entry != null && new File(dir, entry.fileName).exists();
+    }
+
+    /**
+     * @return the cached file for key, or null if it is not cached (or was deleted behind our back)
+     */
+    synchronized File lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        File file = new File(dir, entry.fileName);
+        if (!file.exists()) {
+            entries.remove(key);
+            forgetHash(entry);
+            totalBytes -= entry.size;
+            dirty = true;
+            misses++;
+            return null;
+        }
+
+        entry.lastAccess = System.currentTimeMillis();
+        entry.touched = ++touchCounter;
+        dirty = true;
+        hits++;
+        return file;
+    }
+
+    synchronized String hashOf(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.hash : null;
+    }
+
+    synchronized void setHash(String key, String hash) {
+        Entry entry = entries.get(key);
+        if (entry != null && hash != null && !hash.equals(entry.hash)) {
+            forgetHash(entry);
+            entry.hash = hash;
+            keysByHash.put(hash, key);
+            dirty = true;
+        }
+    }
+
+    /**
+     * @return the cached file whose content has this hash (counted as a lookup), or null
+     */
+    synchronized File lookupByHash(String hash) {
+        String key = keysByHash.get(hash);
+        return key != null ? lookup(key) : null;
+    }
+
+    synchronized void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            forgetHash(entry);
+            new File(dir, entry.fileName).delete();
+            totalBytes -= entry.size;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Records file as the cached content of key. Nothing is evicted here, and the index is only
+     * marked dirty: the batch writes it once with flush() or endBatch().
+     */
+    synchronized void put(String key, File file) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            forgetHash(previous);
+            totalBytes -= previous.size;
+            if (!previous.fileName.equals(file.getName())) {
+                new File(dir, previous.fileName).delete();
+            }
+        }
+
+        Entry entry = new Entry(key, file.getName(), file.length(), System.currentTimeMillis());
+        entry.touched = ++touchCounter;
+        entries.put(key, entry);
+        totalBytes += entry.size;
+        dirty = true;
+    }
+
+    /**
+     * Opens a batch: the entries looked up or put from now on are not evicted before endBatch.
+     * @return the batch handle to pass to endBatch
+     */
+    synchronized long beginBatch() {
+        long batch = touchCounter + 1;
+        openBatches.add(batch);
+        return batch;
+    }
+
+    /**
+     * Closes a batch once its result was sent, then evicts over budget. The entries of this batch are
+     * spared too: they were just handed to JS and become the next least recently used candidates.
+     */
+    synchronized void endBatch(long batch) {
+        openBatches.remove(Long.valueOf(batch));
+        evict(batch);
+        flush();
+    }
+
+    /**
+     * Removes the entries not used during the last olderThanMs milliseconds (all of them when olderThanMs <= 0).
+     */
+    synchronized JSONObject clear(long olderThanMs) throws JSONException {
+        long cutoff = olderThanMs > 0 ? System.currentTimeMillis() - olderThanMs : Long.MAX_VALUE;
+        int removed = 0;
+        long freed = 0;
+
+        long spare = oldestOpenBatch(Long.MAX_VALUE);
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.lastAccess < cutoff && entry.touched < spare) {
+                new File(dir, entry.fileName).delete();
+                it.remove();
+                forgetHash(entry);
+                totalBytes -= entry.size;
+                freed += entry.size;
+                removed++;
+            }
+        }
+        save();
+
+        JSONObject result = new JSONObject();
+        result.put("removed", removed);
+        result.put("freedBytes", freed);
+        return result;
+    }
+
+    synchronized JSONObject stats() throws JSONException {
+        JSONObject result = new JSONObject();
+        result.put("entries", entries.size());
+        result.put("totalBytes", totalBytes);
+        result.put("maxBytes", maxBytes);
+        result.put("hits", hits);
+        result.put("misses", misses);
+        return result;
+    }
+
+    // Writes pending LRU updates (lookups only mark the index dirty).
+    synchronized void flush() {
+        if (dirty) save();
+    }
+
+    // Entrées utilisées depuis le plus ancien lot ouvert (ou depuis spareFrom) : jamais supprimées
+    private long oldestOpenBatch(long spareFrom) {
+        long spare = spareFrom;
+        for (long batch : openBatches) {
+            spare = Math.min(spare, batch);
+        }
+        return spare;
+    }
+
+    private void evict(long spareFrom) {
+        if (totalBytes <= maxBytes) return;
+
+        long spare = oldestOpenBatch(spareFrom);
+        // Access order: the eldest entry is the least recently used.
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext() && totalBytes > maxBytes) {
+            Entry entry = it.next();
+            if (entry.touched >= spare) continue;
+            new File(dir, entry.fileName).delete();
+            it.remove();
+            forgetHash(entry);
+            totalBytes -= entry.size;
+            dirty = true;
+        }
+    }
+
+    private void forgetHash(Entry entry) {
+        if (entry.hash != null && entry.key.equals(keysByHash.get(entry.hash))) {
+            keysByHash.remove(entry.hash);
+        }
+    }
+
+    private void load() {
+        File indexFile = new File(dir, INDEX_FILE);
+        List<Entry> loaded = new ArrayList<>();
+
+        if (indexFile.exists()) {
+            try {
+                JSONArray array = new JSONArray(readText(indexFile));
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject o = array.getJSONObject(i);
+                    String fileName = o.getString("f");
+                    File file = new File(dir, fileName);
+                    if (file.exists()) {
+                        Entry entry = new Entry(o.getString("k"), fileName, file.length(), o.optLong("a"));
+                        entry.hash = o.optString("h", null);
+                        loaded.add(entry);
+                    }
+                }
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "Cache index unreadable, starting empty: " + e.getMessage());
+            }
+        }
+
+        Collections.sort(loaded, (a, b) -> Long.compare(a.lastAccess, b.lastAccess));
+        Set<String> known = new HashSet<>();
+        for (Entry entry : loaded) {
+            entries.put(entry.key, entry);
+            if (entry.hash != null) keysByHash.put(entry.hash, entry.key);
+            totalBytes += entry.size;
+            known.add(entry.fileName);
+        }
+
+        // Files nobody tracks (crash during a copy, older versions) would never be evicted.
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!INDEX_FILE.equals(file.getName()) && !known.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+
+        evict(Long.MAX_VALUE);
+    }
+
+    private static String readText(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private void save() {
+        JSONArray array = new JSONArray();
+        try {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                JSONObject o = new JSONObject();
+                o.put("k", e.getKey());
+                o.put("f", e.getValue().fileName);
+                o.put("a", e.getValue().lastAccess);
+                if (e.getValue().hash != null)
+                    o.put("h", e.getValue().hash);
+                array.put(o);
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Cache index not saved: " + e.getMessage());
+            return;
+        }
+
+        File tmp = new File(dir, INDEX_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(array.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.w(TAG, "Cache index not saved: " + e.getMessage());
+            return;
+        }
+        if (tmp.renameTo(new File(dir, INDEX_FILE))) {
+            dirty = false;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.content.Context;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sync tokens and id snapshots behind getMediaChanges.
+ *
+ * On Android 11+ a token holds, per external volume, the MediaStore version and generation:
+ * rows changed since are those with GENERATION_MODIFIED above it. Before that it holds a time in
+ * seconds compared with DATE_ADDED / DATE_MODIFIED. MediaStore keeps no trace of deleted rows, so
+ * each token also gets a snapshot of the visible ids (id << 1 | 1 for videos, sorted), written in
+ * the app files dir; the ids missing from the next snapshot are the deletions. Listing the visible
+ * ids is O(library) without a running MediaIndex, so it is only done on a reset; otherwise the
+ * previous snapshot is carried over with the rows read, and deletions wait for a call made while an
+ * index runs.
+ */
+class MediaChangeTracker {
+
+    private static final String TAG = "MediaChangeTracker";
+    private static final int KEPT_SNAPSHOTS = 4; // par jeu d'exclusions : quelques clients en retard
+
+    static class Token {
+        final boolean generations; // false : secondes (DATE_ADDED / DATE_MODIFIED)
+        final Map<String, String> versions = new LinkedHashMap<>();
+        final Map<String, Long> values = new LinkedHashMap<>();
+
+        Token(boolean generations) {
+            this.generations = generations;
+        }
+
+        // Mêmes volumes, même base MediaStore : les valeurs sont comparables
+        boolean comparableTo(Token other) {
+            if (other == null || other.generations != generations) return false;
+            return !generations || (versions.equals(other.versions) && values.keySet().equals(other.values.keySet()));
+        }
+
+        String encode() {
+            StringBuilder raw = new StringBuilder(generations ? "g" : "d");
+            for (Map.Entry<String, Long> entry : values.entrySet()) {
+                String version = versions.get(entry.getKey());
+                raw.append(';').append(entry.getKey()).append(':')
+                    .append(version != null ? version : "").append(':').append(entry.getValue());
+            }
+            return Base64.encodeToString(raw.toString().getBytes(StandardCharsets.UTF_8),
+                Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+        }
+
+        static Token decode(String encoded) {
+            if (encoded == null || encoded.isEmpty() || "null".equals(encoded)) return null;
+            try {
+                String raw = new String(Base64.decode(encoded, Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING),
+                    StandardCharsets.UTF_8);
+                String[] parts = raw.split(";");
+                if (!"g".equals(parts[0]) && !"d".equals(parts[0])) return null;
+                Token token = new Token("g".equals(parts[0]));
+                for (int i = 1; i < parts.length; i++) {
+                    String[] fields = parts[i].split(":", -1);
+                    if (fields.length != 3) return null;
+                    token.versions.put(fields[0], fields[1]);
+                    token.values.put(fields[0], Long.parseLong(fields[2]));
+                }
+                return token.values.isEmpty() ? null : token;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        // Nom de fichier stable du snapshot de ce jeton
+        String fileKey() {
+            return Integer.toHexString(encode().hashCode());
+        }
+    }
+
+    private final Context context;
+
+    MediaChangeTracker(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Token describing the library now; read it before reading the rows, so a concurrent change
+     * is seen again by the next sync rather than lost.
+     */
+    Token current() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Token token = new Token(true);
+            Set<String> volumes = MediaStore.getExternalVolumeNames(context);
+            List<String> sorted = new ArrayList<>(volumes);
+            Collections.sort(sorted);
+            for (String volume : sorted) {
+                token.versions.put(volume, MediaStore.getVersion(context, volume));
+                token.values.put(volume, MediaStore.getGeneration(context, volume));
+            }
+            if (!token.values.isEmpty()) return token;
+        }
+        Token token = new Token(false);
+        // Une seconde de marge : DATE_MODIFIED est tronqué à la seconde
+        token.values.put(MediaStore.VOLUME_EXTERNAL, System.currentTimeMillis() / 1000L - 1);
+        return token;
+    }
+
+    static String signature(String selection, List<String> args) {
+        return Integer.toHexString((selection + "|" + args).hashCode());
+    }
+
+    /** Ids visible when token was issued, or null when that snapshot is gone. */
+    long[] loadSnapshot(String signature, Token token) {
+        File file = new File(dir(), signature + "-" + token.fileKey() + ".ids");
+        if (!file.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int n = in.readInt();
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++) keys[i] = in.readLong();
+            return keys;
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable snapshot " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    void saveSnapshot(String signature, Token token, long[] keys) {
+        File dir = dir();
+        File file = new File(dir, signature + "-" + token.fileKey() + ".ids");
+        File partial = new File(dir, file.getName() + ".part");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partial)))) {
+            out.writeInt(keys.length);
+            for (long key : keys) out.writeLong(key);
+        } catch (IOException e) {
+            partial.delete();
+            Log.w(TAG, "Cannot write snapshot: " + e.getMessage());
+            return;
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            return;
+        }
+        prune(dir, signature);
+    }
+
+    // Clés de before absentes de now (deux tableaux triés)
+    static long[] missing(long[] before, long[] now) {
+        long[] gone = new long[before.length];
+        int n = 0;
+        int j = 0;
+        for (long key : before) {
+            while (j < now.length && now[j] < key) j++;
+            if (j >= now.length || now[j] != key) gone[n++] = key;
+        }
+        return Arrays.copyOf(gone, n);
+    }
+
+    // before (trié) plus les clés de added, trié et sans doublon
+    static long[] union(long[] before, List<Long> added) {
+        long[] keys = Arrays.copyOf(before, before.length + added.size());
+        int n = before.length;
+        for (long key : added) keys[n++] = key;
+        Arrays.sort(keys);
+        int m = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (m == 0 || keys[m - 1] != keys[i]) keys[m++] = keys[i];
+        }
+        return Arrays.copyOf(keys, m);
+    }
+
+    private void prune(File dir, String signature) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(signature + "-") && name.endsWith(".ids"));
+        if (files == null || files.length <= KEPT_SNAPSHOTS) return;
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (int i = KEPT_SNAPSHOTS; i < files.length; i++) files[i].delete();
+    }
+
+    private File dir() {
+        File dir = new File(context.getFilesDir(), "MediaPicker/changes");
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+}
@@ -0,0 +1,89 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Byte ranges of a media for readChunk / getChunkPlan, read with positioned FileChannel reads from
+ * the cached copy (file://) or straight from the content URI. Only the requested range is ever in
+ * memory, whatever the file size; a source without a seekable descriptor (pipe, network document)
+ * is reported as such so the caller can copy it first.
+ */
+class MediaChunkReader {
+
+    static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    static final int MIN_CHUNK_SIZE = 16 * 1024;
+    static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024; // un chunk base64 traverse le bridge en une chaîne
+
+    static class Chunk {
+        final byte[] data;
+        final long size; // taille totale de la source
+
+        Chunk(byte[] data, long size) {
+            this.data = data;
+            this.size = size;
+        }
+    }
+
+    private final ContentResolver resolver;
+
+    MediaChunkReader(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    static int clampChunkSize(int size) {
+        return Math.max(MIN_CHUNK_SIZE, Math.min(size, MAX_CHUNK_SIZE));
+    }
+
+    /** @return size in bytes, or -1 when the source cannot be read by position */
+    long size(Uri uri) throws IOException {
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            return pfd != null ? pfd.getStatSize() : -1;
+        }
+    }
+
+    /**
+     * Reads at most length bytes at offset; the chunk is shorter at the end of the source and empty
+     * past it.
+     * @return null when the source cannot be read by position
+     */
+    Chunk read(Uri uri, long offset, int length) throws IOException {
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null || pfd.getStatSize() < 0) return null;
+            long size = pfd.getStatSize();
+            int wanted = (int) Math.max(0, Math.min(length, size - offset));
+            ByteBuffer buffer = ByteBuffer.allocate(wanted);
+
+            try (FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
+                 FileChannel channel = in.getChannel()) {
+                while (buffer.hasRemaining()) {
+                    int n = channel.read(buffer, offset + buffer.position());
+                    if (n <= 0) break;
+                }
+            }
+
+            byte[] data = buffer.array();
+            return new Chunk(buffer.position() == data.length ? data : Arrays.copyOf(data, buffer.position()), size);
+        }
+    }
+
+    // Découpage d'une source de taille connue : {size, chunkSize, count}, le chunk i commence à
+    // i * chunkSize (taille constante quelle que soit celle du fichier)
+    static JSONObject plan(long size, int chunkSize) throws JSONException {
+        JSONObject plan = new JSONObject();
+        plan.put("size", size);
+        plan.put("chunkSize", chunkSize);
+        plan.put("count", (size + chunkSize - 1) / chunkSize);
+        return plan;
+    }
+}
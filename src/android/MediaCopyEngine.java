@@ -0,0 +1,179 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Copies a content URI into a local file.
+ *
+ * Providers backed by a real file (MediaStore, Photo Picker, most document providers) are copied
+ * with FileChannel.transferFrom, which lets the kernel move the bytes without going through the heap.
+ * Other providers (pipes, network documents) are pumped through a pooled direct buffer.
+ * The copy is written to a ".part" file and renamed once complete.
+ */
+class MediaCopyEngine {
+
+    interface ProgressListener {
+        void onProgress(long copied, long total);
+    }
+
+    static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    static final int MIN_BUFFER_SIZE = 16 * 1024;
+    static final int MAX_BUFFER_SIZE = 8 * 1024 * 1024;
+
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+    private static final long PROGRESS_STEP = 1024 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 8;
+
+    private final ContentResolver resolver;
+    private final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<ByteBuffer>> pool = new ConcurrentHashMap<>();
+
+    MediaCopyEngine(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    static int clampBufferSize(int requested) {
+        return Math.max(MIN_BUFFER_SIZE, Math.min(requested, MAX_BUFFER_SIZE));
+    }
+
+    /**
+     * @return number of bytes written to dest
+     */
+    long copy(Uri uri, File dest, int bufferSize, ProgressListener listener) throws IOException {
+        return copy(uri, dest, bufferSize, listener, null);
+    }
+
+    /**
+     * Same as copy; with a digest, every byte goes through the buffer (no transferFrom)
+     * so the digest is fed in the same pass as the write.
+     */
+    long copy(Uri uri, File dest, int bufferSize, ProgressListener listener, MessageDigest digest) throws IOException {
+        File partial = new File(dest.getParentFile(), dest.getName() + ".part");
+        long copied;
+
+        try (FileOutputStream out = new FileOutputStream(partial);
+             FileChannel target = out.getChannel()) {
+
+            ParcelFileDescriptor pfd = digest == null ? openSeekable(uri) : null;
+            if (pfd != null) {
+                try (ParcelFileDescriptor ignored = pfd;
+                     FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
+                     FileChannel source = in.getChannel()) {
+                    copied = transfer(source, target, pfd.getStatSize(), bufferSize, listener);
+                }
+            } else {
+                try (InputStream in = resolver.openInputStream(uri)) {
+                    if (in == null) throw new IOException("Cannot open " + uri);
+                    copied = pump(Channels.newChannel(in), target, 0, -1, bufferSize, listener, digest);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            partial.delete();
+            throw e;
+        }
+
+        if (!partial.renameTo(dest)) {
+            partial.delete();
+            throw new IOException("Cannot move " + partial.getName() + " into cache");
+        }
+        return copied;
+    }
+
+    // Only regular files can be used with transferFrom; pipes report a negative size.
+    private ParcelFileDescriptor openSeekable(Uri uri) {
+        try {
+            ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r");
+            if (pfd != null && pfd.getStatSize() < 0) {
+                pfd.close();
+                return null;
+            }
+            return pfd;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private long transfer(FileChannel source, FileChannel target, long size, int bufferSize,
+                          ProgressListener listener) throws IOException {
+        long position = 0;
+        long reported = 0;
+
+        while (position < size) {
+            long n = target.transferFrom(source, position, Math.min(TRANSFER_CHUNK, size - position));
+            if (n <= 0) break;
+            position += n;
+            if (listener != null && position - reported >= PROGRESS_STEP) {
+                reported = position;
+                listener.onProgress(position, size);
+            }
+        }
+
+        // The reported size can be stale (file still being written): drain what is left.
+        target.position(position);
+        return pump(source, target, position, size, bufferSize, listener, null);
+    }
+
+    private long pump(ReadableByteChannel source, FileChannel target, long alreadyCopied, long total,
+                      int bufferSize, ProgressListener listener, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = acquire(bufferSize);
+        long copied = alreadyCopied;
+        long reported = alreadyCopied;
+
+        try {
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                if (digest != null) {
+                    digest.update(buffer.duplicate());
+                }
+                while (buffer.hasRemaining()) {
+                    copied += target.write(buffer);
+                }
+                buffer.clear();
+
+                if (listener != null && copied - reported >= PROGRESS_STEP) {
+                    reported = copied;
+                    listener.onProgress(copied, total);
+                }
+            }
+        } finally {
+            release(buffer);
+        }
+
+        if (listener != null) {
+            listener.onProgress(copied, total > 0 ? total : copied);
+        }
+        return copied;
+    }
+
+    private ByteBuffer acquire(int size) {
+        ConcurrentLinkedQueue<ByteBuffer> queue = pool.get(size);
+        ByteBuffer buffer = queue != null ? queue.poll() : null;
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private void release(ByteBuffer buffer) {
+        ConcurrentLinkedQueue<ByteBuffer> queue =
+            pool.computeIfAbsent(buffer.capacity(), k -> new ConcurrentLinkedQueue<>());
+        if (queue.size() < MAX_POOLED_BUFFERS) {
+            queue.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.os.Build;
+import android.provider.MediaStore;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Folders and albums hidden from getLastMedias, compiled into the selection of the MediaStore query
+ * so that excluded rows are filtered by the provider instead of being read and tested one by one.
+ *
+ * Options (all optional):
+ *   exclude: {
+ *     hidden: true,                 // files or folders whose name starts with "."
+ *     keywords: ["vault"],          // path fragments, case-insensitive
+ *     folders: ["/storage/emulated/0/Private"],
+ *     relativePaths: ["Pictures/Secret/"],
+ *     bucketIds: ["-1739773001"]
+ *   }
+ * The defaults (hidden + "vault") match the historical in-Java filter.
+ */
+class MediaExclusionRules {
+
+    private static final String BUCKET_ID = MediaStore.Images.ImageColumns.BUCKET_ID;
+
+    boolean hidden = true;
+    final List<String> keywords = new ArrayList<>();
+    final List<String> folders = new ArrayList<>();
+    final List<String> relativePaths = new ArrayList<>();
+    final List<String> bucketIds = new ArrayList<>();
+
+    static MediaExclusionRules defaults() {
+        MediaExclusionRules rules = new MediaExclusionRules();
+        rules.keywords.add("vault");
+        return rules;
+    }
+
+    static MediaExclusionRules from(JSONObject opts) {
+        if (opts == null) return defaults();
+
+        MediaExclusionRules rules = new MediaExclusionRules();
+        rules.hidden = opts.optBoolean("hidden", true);
+        if (opts.has("keywords")) {
+            addAll(opts.optJSONArray("keywords"), rules.keywords);
+        } else {
+            rules.keywords.add("vault");
+        }
+        addAll(opts.optJSONArray("folders"), rules.folders);
+        addAll(opts.optJSONArray("relativePaths"), rules.relativePaths);
+        addAll(opts.optJSONArray("bucketIds"), rules.bucketIds);
+        return rules;
+    }
+
+    private static void addAll(JSONArray values, List<String> target) {
+        if (values == null) return;
+        for (int i = 0; i < values.length(); i++) {
+            String value = values.optString(i, null);
+            if (value != null && !value.isEmpty()) target.add(value);
+        }
+    }
+
+    /**
+     * Appends "AND"-joined conditions to selection. A NULL path never excludes a row,
+     * as with the former Java filter.
+     */
+    void appendTo(StringBuilder selection, List<String> args) {
+        boolean scoped = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+        String pathColumn = scoped ? MediaStore.MediaColumns.RELATIVE_PATH : MediaStore.MediaColumns.DATA;
+
+        if (hidden) {
+            if (scoped) {
+                notLike(selection, args, MediaStore.MediaColumns.RELATIVE_PATH, ".%");
+                notLike(selection, args, MediaStore.MediaColumns.RELATIVE_PATH, "%/.%");
+                notLike(selection, args, MediaStore.MediaColumns.DISPLAY_NAME, ".%");
+            } else {
+                notLike(selection, args, MediaStore.MediaColumns.DATA, "%/.%");
+            }
+        }
+
+        for (String keyword : keywords) {
+            String pattern = "%" + escapeLike(keyword) + "%";
+            notLike(selection, args, pathColumn, pattern);
+            if (scoped) notLike(selection, args, MediaStore.MediaColumns.DISPLAY_NAME, pattern);
+        }
+
+        for (String folder : folders) {
+            String prefix = folder.endsWith("/") ? folder : folder + "/";
+            notLike(selection, args, MediaStore.MediaColumns.DATA, escapeLike(prefix) + "%");
+        }
+
+        for (String relativePath : relativePaths) {
+            String prefix = relativePath.endsWith("/") ? relativePath : relativePath + "/";
+            if (scoped) {
+                notLike(selection, args, MediaStore.MediaColumns.RELATIVE_PATH, escapeLike(prefix) + "%");
+            } else {
+                notLike(selection, args, MediaStore.MediaColumns.DATA, "%/" + escapeLike(prefix) + "%");
+            }
+        }
+
+        if (!bucketIds.isEmpty()) {
+            and(selection).append("(").append(BUCKET_ID).append(" IS NULL OR ")
+                .append(BUCKET_ID).append(" NOT IN (");
+            for (int i = 0; i < bucketIds.size(); i++) {
+                selection.append(i == 0 ? "?" : ", ?");
+                args.add(bucketIds.get(i));
+            }
+            selection.append("))");
+        }
+    }
+
+    private static void notLike(StringBuilder selection, List<String> args, String column, String pattern) {
+        and(selection).append("(").append(column).append(" IS NULL OR ")
+            .append(column).append(" NOT LIKE ? ESCAPE '\\')");
+        args.add(pattern);
+    }
+
+    private static StringBuilder and(StringBuilder selection) {
+        if (selection.length() > 0) selection.append(" AND ");
+        return selection;
+    }
+
+    static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
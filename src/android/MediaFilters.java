@@ -0,0 +1,129 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.provider.MediaStore;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Row filters of getLastMedias and getMediaCount, compiled into the MediaStore selection like
+ * MediaExclusionRules, so only matching rows are read (and copied).
+ *
+ * Options (all optional):
+ *   bucketId: "-1739773001" or ["...", "..."],  // albums, see getAlbums
+ *   fromDate: 1700000000000, toDate: ...,       // DATE_ADDED range in ms, inclusive
+ *   mimeTypes: ["image/jpeg", "video/*"],       // exact types or "type/*"
+ *   minSize: 1024, maxSize: 50000000            // bytes, inclusive
+ */
+class MediaFilters {
+
+    private static final String BUCKET_ID = MediaStore.Images.ImageColumns.BUCKET_ID;
+
+    final List<String> bucketIds = new ArrayList<>();
+    long fromDate; // ms, 0 : pas de borne
+    long toDate;
+    final List<String> mimeTypes = new ArrayList<>();
+    long minSize;
+    long maxSize;
+
+    static MediaFilters from(JSONObject opts) {
+        MediaFilters filters = new MediaFilters();
+        if (opts == null) return filters;
+
+        JSONArray buckets = opts.optJSONArray("bucketId");
+        if (buckets != null) {
+            for (int i = 0; i < buckets.length(); i++) {
+                String bucket = buckets.optString(i, null);
+                if (bucket != null && !bucket.isEmpty()) filters.bucketIds.add(bucket);
+            }
+        } else if (!opts.isNull("bucketId")) {
+            String bucket = opts.optString("bucketId", "");
+            if (!bucket.isEmpty()) filters.bucketIds.add(bucket);
+        }
+
+        filters.fromDate = Math.max(0, opts.optLong("fromDate", 0));
+        filters.toDate = Math.max(0, opts.optLong("toDate", 0));
+
+        JSONArray mimes = opts.optJSONArray("mimeTypes");
+        if (mimes != null) {
+            for (int i = 0; i < mimes.length(); i++) {
+                String mime = mimes.optString(i, null);
+                if (mime != null && !mime.isEmpty()) filters.mimeTypes.add(mime.toLowerCase());
+            }
+        }
+
+        filters.minSize = Math.max(0, opts.optLong("minSize", 0));
+        filters.maxSize = Math.max(0, opts.optLong("maxSize", 0));
+        return filters;
+    }
+
+    boolean isEmpty() {
+        return bucketIds.isEmpty() && fromDate == 0 && toDate == 0 && mimeTypes.isEmpty()
+            && minSize == 0 && maxSize == 0;
+    }
+
+    /** Appends "AND"-joined conditions to selection. */
+    void appendTo(StringBuilder selection, List<String> args) {
+        if (!bucketIds.isEmpty()) {
+            and(selection).append(BUCKET_ID).append(" IN (");
+            for (int i = 0; i < bucketIds.size(); i++) {
+                selection.append(i == 0 ? "?" : ", ?");
+                args.add(bucketIds.get(i));
+            }
+            selection.append(")");
+        }
+
+        // DATE_ADDED est en secondes
+        if (fromDate > 0) {
+            and(selection).append(MediaStore.MediaColumns.DATE_ADDED).append(" >= ?");
+            args.add(String.valueOf(fromDate / 1000L));
+        }
+        if (toDate > 0) {
+            and(selection).append(MediaStore.MediaColumns.DATE_ADDED).append(" <= ?");
+            args.add(String.valueOf(toDate / 1000L));
+        }
+
+        if (!mimeTypes.isEmpty()) {
+            and(selection).append("(");
+            List<String> exact = new ArrayList<>();
+            boolean first = true;
+            for (String mime : mimeTypes) {
+                if (mime.endsWith("/*")) {
+                    if (!first) selection.append(" OR ");
+                    selection.append(MediaStore.MediaColumns.MIME_TYPE).append(" LIKE ? ESCAPE '\\'");
+                    args.add(MediaExclusionRules.escapeLike(mime.substring(0, mime.length() - 1)) + "%");
+                    first = false;
+                } else {
+                    exact.add(mime);
+                }
+            }
+            if (!exact.isEmpty()) {
+                if (!first) selection.append(" OR ");
+                selection.append(MediaStore.MediaColumns.MIME_TYPE).append(" IN (");
+                for (int i = 0; i < exact.size(); i++) {
+                    selection.append(i == 0 ? "?" : ", ?");
+                    args.add(exact.get(i));
+                }
+                selection.append(")");
+            }
+            selection.append(")");
+        }
+
+        if (minSize > 0) {
+            and(selection).append(MediaStore.MediaColumns.SIZE).append(" >= ?");
+            args.add(String.valueOf(minSize));
+        }
+        if (maxSize > 0) {
+            and(selection).append(MediaStore.MediaColumns.SIZE).append(" <= ?");
+            args.add(String.valueOf(maxSize));
+        }
+    }
+
+    private static StringBuilder and(StringBuilder selection) {
+        if (selection.length() > 0) selection.append(" AND ");
+        return selection;
+    }
+}
@@ -0,0 +1,110 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hashes used to deduplicate picked media.
+ *
+ * "sampled" hashes the size and three 64 KB blocks (head, middle, tail) with positioned reads, so
+ * its cost does not depend on the file size; identical files always match, and in practice two
+ * different photos or videos never share size and samples. "sha256" hashes every byte; when the
+ * file is copied the digest is fed by the copy itself (MediaCopyEngine).
+ */
+class MediaHasher {
+
+    static final String SAMPLED = "sampled";
+    static final String SHA256 = "sha256";
+
+    private static final int SAMPLE = 64 * 1024;
+    private static final int STREAM_BUFFER = 64 * 1024;
+
+    private final ContentResolver resolver;
+
+    MediaHasher(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String format(String algorithm, MessageDigest digest) {
+        byte[] hash = digest.digest();
+        StringBuilder sb = new StringBuilder(algorithm.length() + 1 + hash.length * 2).append(algorithm).append(':');
+        for (byte b : hash) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return "sampled:..." or null when the source is not a seekable file (pipe, network document)
+     */
+    String sampled(Uri uri) throws IOException {
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null || pfd.getStatSize() < 0) return null;
+            long size = pfd.getStatSize();
+
+            MessageDigest digest = newDigest();
+            digest.update(ByteBuffer.allocate(8).putLong(0, size));
+            try (FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
+                 FileChannel channel = in.getChannel()) {
+                ByteBuffer buffer = ByteBuffer.allocate(SAMPLE);
+                if (size <= 3L * SAMPLE) {
+                    read(channel, buffer, 0, size, digest);
+                } else {
+                    read(channel, buffer, 0, SAMPLE, digest);
+                    read(channel, buffer, size / 2 - SAMPLE / 2, SAMPLE, digest);
+                    read(channel, buffer, size - SAMPLE, SAMPLE, digest);
+                }
+            }
+            return format(SAMPLED, digest);
+        } catch (SecurityException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // SHA-256 de tout le contenu, lu en flux (source non copiée, ou copie déjà en cache)
+    String sha256(Uri uri) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) throw new IOException("Cannot open " + uri);
+            byte[] buffer = new byte[STREAM_BUFFER];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return format(SHA256, digest);
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position, long length,
+                             MessageDigest digest) throws IOException {
+        long remaining = length;
+        long at = position;
+        while (remaining > 0) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), remaining));
+            int n = channel.read(buffer, at);
+            if (n <= 0) break;
+            buffer.flip();
+            digest.update(buffer);
+            at += n;
+            remaining -= n;
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Long-lived, in-memory copy of the image and video rows getLastMedias pages through:
+ * (DATE_ADDED, _ID, MEDIA_TYPE, SIZE, WIDTH, HEIGHT) in parallel primitive arrays, newest first,
+ * for one selection (the exclusion rules it was started with).
+ *
+ * A ContentObserver on the Images and Video collections feeds it: notifications are coalesced for
+ * DEBOUNCE_MS, the changed ids are re-read with one "_ID IN (...)" query and inserted, moved or removed
+ * in place. A notification without an id (bulk change) triggers a full rescan.
+ * Keyset pages and counts are then answered from memory.
+ */
+class MediaIndex {
+
+    private static final String TAG = "MediaIndex";
+    private static final long DEBOUNCE_MS = 300;
+    private static final int MAX_INCREMENTAL = 500; // au-delà, une relecture complète coûte moins cher
+
+    static final int IMAGE = MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE;
+    static final int VIDEO = MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
+
+    private static final String[] PROJECTION = {
+        MediaStore.MediaColumns._ID,
+        MediaStore.MediaColumns.DATE_ADDED,
+        MediaStore.Files.FileColumns.MEDIA_TYPE,
+        MediaStore.MediaColumns.SIZE,
+        MediaStore.MediaColumns.WIDTH,
+        MediaStore.MediaColumns.HEIGHT
+    };
+    private static final String SORT_ORDER =
+        MediaStore.MediaColumns.DATE_ADDED + " DESC, " + MediaStore.MediaColumns._ID + " DESC";
+
+    interface Listener {
+        void onMediaChanged(MediaIndex index, long[] inserted, long[] updated, long[] deleted);
+    }
+
+    static class Row {
+        final long id;
+        final long dateAdded; // secondes
+        final int mediaType;
+        final long size;
+        final int width;
+        final int height;
+
+        Row(long id, long dateAdded, int mediaType, long size, int width, int height) {
+            this.id = id;
+            this.dateAdded = dateAdded;
+            this.mediaType = mediaType;
+            this.size = size;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final ContentResolver resolver;
+    private final String selection;
+    private final String[] selectionArgs;
+    private final Listener listener;
+
+    // Colonnes parallèles, triées par (dateAdded DESC, id DESC) ; seules les `count` premières cases servent
+    private long[] ids = new long[0];
+    private long[] dates = new long[0];
+    private byte[] types = new byte[0];
+    private long[] sizes = new long[0];
+    private int[] widths = new int[0];
+    private int[] heights = new int[0];
+    // Mêmes lignes triées par id croissant, avec leur date : position d'un id par recherche binaire
+    private long[] byId = new long[0];
+    private long[] byIdDates = new long[0];
+    private int count;
+    private int images;
+    private int videos;
+
+    private HandlerThread thread;
+    private Handler handler;
+    private ContentObserver observer;
+
+    private final Set<Long> pendingIds = new HashSet<>();
+    private boolean rescanPending;
+    private boolean loaded; // sous pendingIds : les notifications attendent le chargement initial
+    private final Runnable flush = this::applyPending;
+
+    MediaIndex(ContentResolver resolver, String selection, String[] selectionArgs, Listener listener) {
+        this.resolver = resolver;
+        this.selection = selection;
+        this.selectionArgs = selectionArgs;
+        this.listener = listener;
+    }
+
+    boolean matches(String selection, String[] selectionArgs) {
+        return Objects.equals(this.selection, selection) && Arrays.equals(this.selectionArgs, selectionArgs);
+    }
+
+    // Abonnement puis chargement initial : les changements pendant le scan sont mis en attente
+    // et appliqués ensuite. À appeler hors du thread UI.
+    void start() {
+        thread = new HandlerThread("MediaPicker-index");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        observer = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                schedule(uri);
+            }
+        };
+        resolver.registerContentObserver(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, observer);
+        resolver.registerContentObserver(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, true, observer);
+
+        List<Row> rows;
+        try {
+            rows = scan();
+        } catch (RuntimeException e) {
+            stop();
+            throw e;
+        }
+        synchronized (this) {
+            replaceAll(rows);
+        }
+        synchronized (pendingIds) {
+            loaded = true;
+            if (rescanPending || !pendingIds.isEmpty()) handler.post(flush);
+        }
+    }
+
+    void stop() {
+        if (observer != null) {
+            resolver.unregisterContentObserver(observer);
+            observer = null;
+        }
+        if (thread != null) {
+            thread.quitSafely();
+            thread = null;
+        }
+    }
+
+    synchronized int count(int mediaType) {
+        return mediaType == IMAGE ? images : mediaType == VIDEO ? videos : count;
+    }
+
+    // Identités visibles (id << 1, | 1 pour une vidéo), triées : snapshot de getMediaChanges sans requête
+    synchronized long[] keys() {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) keys[i] = ids[i] << 1 | (types[i] == VIDEO ? 1 : 0);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * @param mediaType IMAGE, VIDEO or 0 for both
+     * @param keyed     resume strictly after (afterDate, afterId) instead of skipping `offset` rows
+     */
+    synchronized List<Row> page(int mediaType, boolean keyed, long afterDate, long afterId, int offset, int limit) {
+        List<Row> page = new ArrayList<>(Math.max(0, Math.min(limit, count)));
+        int i = keyed ? firstAfter(afterDate, afterId) : 0;
+        int skip = keyed ? 0 : offset;
+        if (mediaType == 0) {
+            // Sans filtre de type, l'offset est une simple position
+            i += skip;
+            skip = 0;
+        }
+        for (; i < count && page.size() < limit; i++) {
+            if (mediaType != 0 && types[i] != mediaType) continue;
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            page.add(rowAt(i));
+        }
+        return page;
+    }
+
+    private Row rowAt(int i) {
+        return new Row(ids[i], dates[i], types[i], sizes[i], widths[i], heights[i]);
+    }
+
+    // Première position strictement après (date, id) dans l'ordre décroissant
+    private int firstAfter(long date, long id) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (dates[mid] > date || (dates[mid] == date && ids[mid] >= id)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int indexOf(long id) {
+        int p = Arrays.binarySearch(byId, 0, count, id);
+        if (p < 0) return -1;
+        int at = firstAfter(byIdDates[p], id) - 1;
+        return at >= 0 && ids[at] == id ? at : -1;
+    }
+
+    private void replaceAll(List<Row> rows) {
+        int n = rows.size();
+        ids = new long[n];
+        dates = new long[n];
+        types = new byte[n];
+        sizes = new long[n];
+        widths = new int[n];
+        heights = new int[n];
+        count = 0;
+        images = 0;
+        videos = 0;
+        // Déjà triées par la requête
+        for (Row row : rows) set(count++, row);
+
+        byId = Arrays.copyOf(ids, n);
+        Arrays.sort(byId);
+        byIdDates = new long[n];
+        for (int i = 0; i < n; i++) byIdDates[Arrays.binarySearch(byId, ids[i])] = dates[i];
+    }
+
+    private void set(int i, Row row) {
+        ids[i] = row.id;
+        dates[i] = row.dateAdded;
+        types[i] = (byte) row.mediaType;
+        sizes[i] = row.size;
+        widths[i] = row.width;
+        heights[i] = row.height;
+        if (row.mediaType == VIDEO) videos++; else images++;
+    }
+
+    private void insert(Row row) {
+        if (count == ids.length) grow();
+        int at = firstAfter(row.dateAdded, row.id);
+        int tail = count - at;
+        System.arraycopy(ids, at, ids, at + 1, tail);
+        System.arraycopy(dates, at, dates, at + 1, tail);
+        System.arraycopy(types, at, types, at + 1, tail);
+        System.arraycopy(sizes, at, sizes, at + 1, tail);
+        System.arraycopy(widths, at, widths, at + 1, tail);
+        System.arraycopy(heights, at, heights, at + 1, tail);
+        set(at, row);
+
+        int p = -Arrays.binarySearch(byId, 0, count, row.id) - 1;
+        System.arraycopy(byId, p, byId, p + 1, count - p);
+        System.arraycopy(byIdDates, p, byIdDates, p + 1, count - p);
+        byId[p] = row.id;
+        byIdDates[p] = row.dateAdded;
+        count++;
+    }
+
+    private void removeAt(int at) {
+        int p = Arrays.binarySearch(byId, 0, count, ids[at]);
+        System.arraycopy(byId, p + 1, byId, p, count - p - 1);
+        System.arraycopy(byIdDates, p + 1, byIdDates, p, count - p - 1);
+
+        if (types[at] == VIDEO) videos--; else images--;
+        int tail = count - at - 1;
+        System.arraycopy(ids, at + 1, ids, at, tail);
+        System.arraycopy(dates, at + 1, dates, at, tail);
+        System.arraycopy(types, at + 1, types, at, tail);
+        System.arraycopy(sizes, at + 1, sizes, at, tail);
+        System.arraycopy(widths, at + 1, widths, at, tail);
+        System.arraycopy(heights, at + 1, heights, at, tail);
+        count--;
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacity);
+        dates = Arrays.copyOf(dates, capacity);
+        types = Arrays.copyOf(types, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        widths = Arrays.copyOf(widths, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+        byId = Arrays.copyOf(byId, capacity);
+        byIdDates = Arrays.copyOf(byIdDates, capacity);
+    }
+
+    // Thread de l'observer : on regroupe les notifications d'une rafale (prise de vue, import)
+    private void schedule(Uri uri) {
+        long id = -1;
+        if (uri != null) {
+            try {
+                id = ContentUris.parseId(uri);
+            } catch (NumberFormatException | UnsupportedOperationException ignored) {}
+        }
+        synchronized (pendingIds) {
+            if (id < 0) rescanPending = true; else pendingIds.add(id);
+        }
+        handler.removeCallbacks(flush);
+        handler.postDelayed(flush, DEBOUNCE_MS);
+    }
+
+    private void applyPending() {
+        long[] changed;
+        boolean rescan;
+        synchronized (pendingIds) {
+            if (!loaded) return; // repris à la fin de start()
+            rescan = rescanPending || pendingIds.size() > MAX_INCREMENTAL;
+            changed = new long[pendingIds.size()];
+            int k = 0;
+            for (Long id : pendingIds) changed[k++] = id;
+            pendingIds.clear();
+            rescanPending = false;
+        }
+
+        try {
+            if (rescan) {
+                rescan();
+            } else if (changed.length > 0) {
+                applyIncremental(changed);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Cannot update the media index: " + e.getMessage());
+        }
+    }
+
+    private void applyIncremental(long[] changed) {
+        Map<Long, Row> found = query(changed);
+        List<Long> inserted = new ArrayList<>();
+        List<Long> updated = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+
+        synchronized (this) {
+            for (long id : changed) {
+                int at = indexOf(id);
+                Row row = found.get(id);
+                if (at >= 0) removeAt(at);
+                if (row != null) {
+                    insert(row);
+                    (at >= 0 ? updated : inserted).add(id);
+                } else if (at >= 0) {
+                    deleted.add(id);
+                }
+            }
+        }
+        notifyChanged(inserted, updated, deleted);
+    }
+
+    private void rescan() {
+        List<Row> rows = scan();
+        List<Long> inserted = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+
+        synchronized (this) {
+            Set<Long> before = new HashSet<>(count);
+            for (int i = 0; i < count; i++) before.add(ids[i]);
+            for (Row row : rows) {
+                if (!before.remove(row.id)) inserted.add(row.id);
+            }
+            deleted.addAll(before);
+            replaceAll(rows);
+        }
+        notifyChanged(inserted, new ArrayList<>(), deleted);
+    }
+
+    private void notifyChanged(List<Long> inserted, List<Long> updated, List<Long> deleted) {
+        if (listener == null || (inserted.isEmpty() && updated.isEmpty() && deleted.isEmpty())) return;
+        listener.onMediaChanged(this, toArray(inserted), toArray(updated), toArray(deleted));
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) array[i] = values.get(i);
+        return array;
+    }
+
+    private List<Row> scan() {
+        List<Row> rows = new ArrayList<>();
+        try (Cursor cursor = resolver.query(MediaStore.Files.getContentUri("external"), PROJECTION,
+                selection, selectionArgs, SORT_ORDER)) {
+            if (cursor == null) return rows;
+            while (cursor.moveToNext()) rows.add(read(cursor));
+        }
+        return rows;
+    }
+
+    // Lignes encore visibles pour la sélection de l'index, parmi les ids notifiés
+    private Map<Long, Row> query(long[] changed) {
+        StringBuilder where = new StringBuilder(MediaStore.MediaColumns._ID).append(" IN (");
+        List<String> args = new ArrayList<>();
+        if (selectionArgs != null) args.addAll(Arrays.asList(selectionArgs));
+        List<String> idArgs = new ArrayList<>(changed.length);
+        for (int i = 0; i < changed.length; i++) {
+            where.append(i == 0 ? "?" : ", ?");
+            idArgs.add(String.valueOf(changed[i]));
+        }
+        where.append(")");
+        String fullSelection = selection != null ? "(" + selection + ") AND " + where : where.toString();
+        args.addAll(idArgs);
+
+        Map<Long, Row> found = new HashMap<>();
+        try (Cursor cursor = resolver.query(MediaStore.Files.getContentUri("external"), PROJECTION,
+                fullSelection, args.toArray(new String[0]), null)) {
+            if (cursor == null) return found;
+            while (cursor.moveToNext()) {
+                Row row = read(cursor);
+                found.put(row.id, row);
+            }
+        }
+        return found;
+    }
+
+    private static Row read(Cursor cursor) {
+        return new Row(cursor.getLong(0), cursor.getLong(1),
+            cursor.getInt(2) == VIDEO ? VIDEO : IMAGE,
+            cursor.isNull(3) ? 0 : cursor.getLong(3),
+            cursor.isNull(4) ? 0 : cursor.getInt(4),
+            cursor.isNull(5) ? 0 : cursor.getInt(5));
+    }
+}
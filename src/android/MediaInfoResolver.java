@@ -0,0 +1,193 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves everything the item pipeline needs to know about a content URI (name, size, MIME type,
+ * dimensions, duration, orientation) with a single projected query, instead of one all-columns
+ * query per step. MediaStore URIs of the same collection are resolved together with "_ID IN (...)".
+ */
+class MediaInfoResolver {
+
+    private static final String TAG = "MediaInfoResolver";
+    private static final int MAX_IN_ARGS = 500;
+
+    static class MediaInfo {
+        final Uri uri;
+        String displayName;
+        long size;
+        long dateModified; // seconds, 0 when unknown
+        String mimeType;
+        int width;
+        int height;
+        long durationMs = -1;
+        int orientation = -1;
+
+        MediaInfo(Uri uri) {
+            this.uri = uri;
+        }
+
+        String extension() {
+            if (displayName == null) return null;
+            int dot = displayName.lastIndexOf('.');
+            return dot > 0 ? displayName.substring(dot + 1) : null;
+        }
+    }
+
+    private final ContentResolver resolver;
+
+    MediaInfoResolver(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    MediaInfo resolve(Uri uri) {
+        MediaInfo info = new MediaInfo(uri);
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(uri, projectionFor(uri), null, null, null);
+        } catch (Exception e) {
+            // Provider that does not know some of the MediaStore columns
+            try {
+                cursor = resolver.query(uri,
+                    new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE}, null, null, null);
+            } catch (Exception ignored) {}
+        }
+
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) read(cursor, info);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        completeMime(info);
+        return info;
+    }
+
+    /**
+     * Resolves a batch of URIs: one query per MediaStore collection, one query per other URI.
+     */
+    Map<Uri, MediaInfo> resolveAll(List<Uri> uris) {
+        Map<Uri, MediaInfo> result = new HashMap<>();
+        Map<Uri, List<Uri>> byCollection = new LinkedHashMap<>();
+
+        for (Uri uri : uris) {
+            Uri collection = mediaStoreCollection(uri);
+            if (collection == null) continue;
+            List<Uri> members = byCollection.get(collection);
+            if (members == null) {
+                members = new ArrayList<>();
+                byCollection.put(collection, members);
+            }
+            members.add(uri);
+        }
+
+        for (Map.Entry<Uri, List<Uri>> group : byCollection.entrySet()) {
+            List<Uri> members = group.getValue();
+            for (int start = 0; start < members.size(); start += MAX_IN_ARGS) {
+                queryById(group.getKey(), members.subList(start, Math.min(start + MAX_IN_ARGS, members.size())), result);
+            }
+        }
+
+        for (Uri uri : uris) {
+            if (!result.containsKey(uri)) result.put(uri, resolve(uri));
+        }
+        return result;
+    }
+
+    private void queryById(Uri collection, List<Uri> members, Map<Uri, MediaInfo> result) {
+        Map<String, Uri> byId = new HashMap<>();
+        StringBuilder selection = new StringBuilder(MediaStore.MediaColumns._ID).append(" IN (");
+        String[] args = new String[members.size()];
+        for (int i = 0; i < members.size(); i++) {
+            String id = members.get(i).getLastPathSegment();
+            byId.put(id, members.get(i));
+            args[i] = id;
+            selection.append(i == 0 ? "?" : ", ?");
+        }
+        selection.append(")");
+
+        String[] base = projectionFor(members.get(0));
+        String[] projection = new String[base.length + 1];
+        projection[0] = MediaStore.MediaColumns._ID;
+        System.arraycopy(base, 0, projection, 1, base.length);
+
+        try (Cursor cursor = resolver.query(collection, projection, selection.toString(), args, null)) {
+            if (cursor == null) return;
+            int idCol = cursor.getColumnIndex(MediaStore.MediaColumns._ID);
+            while (cursor.moveToNext()) {
+                Uri uri = byId.get(cursor.getString(idCol));
+                if (uri == null) continue;
+                MediaInfo info = new MediaInfo(uri);
+                read(cursor, info);
+                completeMime(info);
+                result.put(uri, info);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Batch query failed for " + collection + ": " + e.getMessage());
+        }
+    }
+
+    // content://media/<volume>/<images|video|audio>/media/<id> -> content://media/<volume>/<type>/media
+    private static Uri mediaStoreCollection(Uri uri) {
+        if (!MediaStore.AUTHORITY.equals(uri.getAuthority())) return null;
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 4 || !"media".equals(segments.get(2))) return null;
+        if (!segments.get(3).matches("\\d+")) return null;
+        return new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(MediaStore.AUTHORITY)
+            .appendPath(segments.get(0)).appendPath(segments.get(1)).appendPath(segments.get(2))
+            .build();
+    }
+
+    private static String[] projectionFor(Uri uri) {
+        String path = uri.getPath() != null ? uri.getPath() : "";
+        boolean image = path.contains("/images/");
+        boolean video = path.contains("/video/");
+
+        ArrayList<String> projection = new ArrayList<>();
+        projection.add(OpenableColumns.DISPLAY_NAME);
+        projection.add(OpenableColumns.SIZE);
+        projection.add(MediaStore.MediaColumns.DATE_MODIFIED);
+        projection.add(MediaStore.MediaColumns.MIME_TYPE);
+        projection.add(MediaStore.MediaColumns.WIDTH);
+        projection.add(MediaStore.MediaColumns.HEIGHT);
+        if (!video) projection.add(MediaStore.Images.ImageColumns.ORIENTATION);
+        if (!image) projection.add(MediaStore.Video.VideoColumns.DURATION);
+        return projection.toArray(new String[0]);
+    }
+
+    private static void read(Cursor cursor, MediaInfo info) {
+        int col;
+        if ((col = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME)) != -1) info.displayName = cursor.getString(col);
+        if ((col = cursor.getColumnIndex(OpenableColumns.SIZE)) != -1) info.size = cursor.getLong(col);
+        if ((col = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED)) != -1) info.dateModified = cursor.getLong(col);
+        if ((col = cursor.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE)) != -1) info.mimeType = cursor.getString(col);
+        if ((col = cursor.getColumnIndex(MediaStore.MediaColumns.WIDTH)) != -1) info.width = cursor.getInt(col);
+        if ((col = cursor.getColumnIndex(MediaStore.MediaColumns.HEIGHT)) != -1) info.height = cursor.getInt(col);
+        if ((col = cursor.getColumnIndex(MediaStore.Images.ImageColumns.ORIENTATION)) != -1 && !cursor.isNull(col))
+            info.orientation = cursor.getInt(col);
+        if ((col = cursor.getColumnIndex(MediaStore.Video.VideoColumns.DURATION)) != -1 && !cursor.isNull(col))
+            info.durationMs = cursor.getLong(col);
+    }
+
+    // Only asks the provider for the type when the row did not carry it
+    private void completeMime(MediaInfo info) {
+        if (info.mimeType == null) {
+            try {
+                info.mimeType = resolver.getType(info.uri);
+            } catch (Exception ignored) {}
+        }
+    }
+}
@@ -5,83 +5,138 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.os.ext.SdkExtensions;
 import android.provider.MediaStore;
-import android.provider.OpenableColumns;
+import android.util.Base64;
 import android.util.Log;
 import android.widget.FrameLayout;
 import android.widget.ProgressBar;
 import android.graphics.BitmapFactory;
-import android.media.MediaMetadataRetriever;
 
 import org.apache.cordova.*;
+import com.okanbeydanol.mediaPicker.MediaInfoResolver.MediaInfo;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.UUID;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.graphics.Bitmap;
-import android.media.ThumbnailUtils;
-import android.util.Size;
-
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.function.BiConsumer;
-
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.media.ExifInterface;
 
 public class MediaPicker extends CordovaPlugin {
 
     private static final int REQUEST_CODE = 2025;
 
-    private CallbackContext callbackContext;
-    private int selectionLimit = 3;
-    private boolean showLoader = true;
-    private boolean imageOnly = false;
-    private String mediaType = "all"; // images | videos | all
+    // Chaque appel getMedias / getLastMedias a son propre MediaRequest : les appels qui se chevauchent
+    // (défilement infini, préchargement) ne partagent ni callback ni options.
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    private final ConcurrentHashMap<Integer, MediaRequest> awaitingPermission = new ConcurrentHashMap<>();
+    // getMedias en attente du résultat du picker ; écrit par execute(), lu par onActivityResult
+    private volatile MediaRequest pendingPick;
+    private final ConcurrentHashMap<String, MediaJob> jobs = new ConcurrentHashMap<>(); // jobId -> travail annulable
+
+    // Copy, MediaMetadataRetriever probes and thumbnails are mostly I/O bound,
+    // so the worker pool is allowed to go a bit above the core count.
+    private static final int MAX_WORKERS =
+        Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() * 2, 8));
+    private ExecutorService mediaExecutor;
+
+    // copyMode : "eager" copie dans le cache (défaut), "lazy" ne copie que si le provider
+    // ne fournit pas de descripteur, "none" ne copie jamais (voir materialize)
+    private static final String COPY_EAGER = "eager";
+    private static final String COPY_LAZY = "lazy";
+    private static final String COPY_NONE = "none";
+    // Sources des ids renvoyés à JS (id = content URI), les plus récentes seulement : un id absent
+    // est reconstruit depuis MediaStore (sourceFor), y compris après un redémarrage de l'app
+    private static final int MAX_SOURCES = 1024;
+    private final Map<String, SourceRecord> sources = Collections.synchronizedMap(
+        new LinkedHashMap<String, SourceRecord>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SourceRecord> eldest) {
+                return size() > MAX_SOURCES;
+            }
+        });
+    private MediaCopyEngine copyEngine;
+    private MediaCacheIndex cacheIndex;
+    private MediaInfoResolver infoResolver;
+    private ImageTranscoder imageTranscoder;
+    private ThumbnailGenerator thumbnailGenerator;
+    private ExifReader exifReader;
+    private VideoTranscoder videoTranscoder;
+    private MediaPrefetcher prefetcher;
+    private MediaHasher mediaHasher;
+    private MediaChunkReader chunkReader;
+    private MediaChangeTracker changeTracker;
+    private MediaIndex mediaIndex;          // startMediaIndex : pages et comptes servis depuis la mémoire
+    private CallbackContext mediaIndexCallback; // reçoit les évènements mediaChanged
+
+    // Ré-encodages vidéo en cours et l'appel qui les a lancés : cancelTranscode() annule ces appels
+    private final Map<AtomicBoolean, MediaJob> activeTranscodes = new ConcurrentHashMap<>();
 
     private FrameLayout overlayView;
     private ProgressBar overlaySpinner;
-    private boolean isPickerOpen = false;
 
-    private static final int PERMISSION_REQUEST_CODE = 2026;
     private static final String READ_EXTERNAL_STORAGE = android.Manifest.permission.READ_EXTERNAL_STORAGE;
     // Pour Android 13+ (API 33)
     private static final String READ_MEDIA_IMAGES = "android.permission.READ_MEDIA_IMAGES";
     private static final String READ_MEDIA_VIDEO = "android.permission.READ_MEDIA_VIDEO";
 
-    private JSONArray lastArgs; // Pour stocker les arguments en attente de permission
 
     @Override
     public boolean execute(String action, JSONArray args, final CallbackContext callbackContext) throws JSONException {
         if ("getMedias".equals(action)) {
-            if (isPickerOpen) {
+            if (pendingPick != null) {
                 callbackContext.error("Picker is already open");
                 return true;
             }
-            this.callbackContext = callbackContext;
-
-            if (args != null && args.length() > 0) {
-                JSONObject opts = args.optJSONObject(0);
-                if (opts != null) {
-                    selectionLimit = Math.max(1, opts.optInt("selectionLimit", 3));
-                    showLoader = opts.optBoolean("showLoader", true);
-                    imageOnly = opts.optBoolean("imageOnly", false);
-                    mediaType = opts.optString("mediaType", null);
-                    // compatibility fallback for older versions
-                    if (mediaType == null || mediaType.isEmpty()) {
-                        mediaType = imageOnly ? "images" : "all";
-                    }
+
+            MediaRequest request = new MediaRequest(nextRequestId.getAndIncrement(), callbackContext, args);
+            jobs.put(request.job.id, request.job);
+            JSONObject opts = request.opts();
+            if (opts != null) {
+                request.selectionLimit = Math.max(1, opts.optInt("selectionLimit", 3));
+                request.showLoader = opts.optBoolean("showLoader", true);
+                request.options = ProcessOptions.from(opts);
+                String type = opts.optString("mediaType", null);
+                // compatibility fallback for older versions
+                if (type == null || type.isEmpty()) {
+                    type = opts.optBoolean("imageOnly", false) ? "images" : "all";
                 }
+                request.mediaType = type;
             }
+            request.options.job = request.job;
+            int selectionLimit = request.selectionLimit;
+            String mediaType = request.mediaType;
 
             Intent intent;
 
@@ -136,14 +191,15 @@ public class MediaPicker extends CordovaPlugin {
                 intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, selectionLimit > 1);
             }
 
-            isPickerOpen = true;
+            pendingPick = request;
             cordova.startActivityForResult(this, intent, REQUEST_CODE);
             return true;
         }
 
         if ("getLastMedias".equals(action)) {
-            this.callbackContext = callbackContext;
-            this.lastArgs = args; // Crucial pour la reprise après permission
+            // Les arguments voyagent avec la requête, y compris pendant la demande de permission
+            MediaRequest request = new MediaRequest(nextRequestId.getAndIncrement(), callbackContext, args);
+            jobs.put(request.job.id, request.job);
 
             String[] permissions;
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
@@ -156,11 +212,245 @@ public class MediaPicker extends CordovaPlugin {
             }
 
             if (hasPermissions(permissions)) {
-                processGetLastMedias(args);
+                processGetLastMedias(request);
             } else {
-                // Demande de permission : Cordova mettra en pause l'exécution
-                cordova.requestPermissions(this, PERMISSION_REQUEST_CODE, permissions);
+                // Demande de permission : le code de requête identifie l'appel à reprendre
+                awaitingPermission.put(request.id, request);
+                cordova.requestPermissions(this, request.id, permissions);
+            }
+            return true;
+        }
+
+        if ("materialize".equals(action)) {
+            String id = args.optString(0, null);
+            if (id == null || id.isEmpty() || "null".equals(id)) {
+                callbackContext.error("Media id is required");
+                return true;
+            }
+
+            getMediaExecutor().execute(() -> {
+                try {
+                    callbackContext.success(materialize(id));
+                } catch (Exception e) {
+                    callbackContext.error("Materialize error: " + e.getMessage());
+                }
+            });
+            return true;
+        }
+
+        if ("readChunk".equals(action)) {
+            JSONObject opts = args.optJSONObject(0);
+            String id = opts != null ? opts.optString("id", "") : "";
+            if (id.isEmpty() || "null".equals(id)) {
+                callbackContext.error("Media id is required");
+                return true;
+            }
+            long offset = Math.max(0, opts.optLong("offset", 0));
+            int length = Math.max(1, Math.min(opts.optInt("length", MediaChunkReader.DEFAULT_CHUNK_SIZE),
+                    MediaChunkReader.MAX_CHUNK_SIZE));
+            // arraybuffer : octets bruts (message binaire du bridge), sans enveloppe JSON
+            boolean binary = "arraybuffer".equalsIgnoreCase(opts.optString("encoding", "base64"));
+            boolean original = "original".equals(opts.optString("source", "output"));
+
+            cordova.getThreadPool().execute(() -> {
+                try {
+                    MediaChunkReader.Chunk chunk = readChunk(id, offset, length, original);
+                    if (binary) {
+                        callbackContext.success(chunk.data);
+                    } else {
+                        JSONObject result = new JSONObject();
+                        result.put("id", id);
+                        result.put("offset", offset);
+                        result.put("length", chunk.data.length);
+                        result.put("size", chunk.size);
+                        result.put("eof", offset + chunk.data.length >= chunk.size);
+                        result.put("data", Base64.encodeToString(chunk.data, Base64.NO_WRAP));
+                        callbackContext.success(result);
+                    }
+                } catch (Exception e) {
+                    callbackContext.error("Chunk error: " + e.getMessage());
+                }
+            });
+            return true;
+        }
+
+        if ("getChunkPlan".equals(action)) {
+            JSONObject opts = args.optJSONObject(0);
+            String id = opts != null ? opts.optString("id", "") : "";
+            if (id.isEmpty() || "null".equals(id)) {
+                callbackContext.error("Media id is required");
+                return true;
+            }
+            int chunkSize = MediaChunkReader.clampChunkSize(
+                    opts.optInt("chunkSize", MediaChunkReader.DEFAULT_CHUNK_SIZE));
+            boolean original = "original".equals(opts.optString("source", "output"));
+
+            cordova.getThreadPool().execute(() -> {
+                try {
+                    callbackContext.success(chunkPlan(id, chunkSize, original));
+                } catch (Exception e) {
+                    callbackContext.error("Chunk error: " + e.getMessage());
+                }
+            });
+            return true;
+        }
+
+        if ("cancel".equals(action)) {
+            MediaJob job = jobs.get(args.optString(0, ""));
+            callbackContext.success(job != null && job.cancel() ? 1 : 0);
+            return true;
+        }
+
+        if ("retry".equals(action)) {
+            JSONArray failures = args.optJSONArray(0);
+            if (failures == null) {
+                callbackContext.error("failures is required");
+                return true;
+            }
+            JSONObject opts = args.optJSONObject(1);
+            MediaRequest request = new MediaRequest(nextRequestId.getAndIncrement(), callbackContext,
+                    opts != null ? new JSONArray().put(opts) : new JSONArray());
+            request.options = ProcessOptions.from(opts);
+            request.options.job = request.job;
+            jobs.put(request.job.id, request.job);
+            retryFailures(request, failures);
+            return true;
+        }
+
+        // Raccourci de cancel(jobId) pour les appels qui ré-encodent une vidéo : même rejet de l'appel
+        if ("cancelTranscode".equals(action)) {
+            int cancelled = 0;
+            for (MediaJob job : new HashSet<>(activeTranscodes.values())) {
+                if (job.cancel()) cancelled++;
+            }
+            callbackContext.success(cancelled);
+            return true;
+        }
+
+        if ("startMediaIndex".equals(action)) {
+            JSONObject opts = args.optJSONObject(0);
+            MediaExclusionRules exclusions = MediaExclusionRules.from(opts != null ? opts.optJSONObject("exclude") : null);
+            cordova.getThreadPool().execute(() -> {
+                try {
+                    int count = startMediaIndex(exclusions, callbackContext);
+                    JSONObject ready = new JSONObject();
+                    ready.put("event", "ready");
+                    ready.put("count", count);
+                    PluginResult result = new PluginResult(PluginResult.Status.OK, ready);
+                    result.setKeepCallback(true);
+                    callbackContext.sendPluginResult(result);
+                } catch (Exception e) {
+                    callbackContext.error("Index error: " + e.getMessage());
+                }
+            });
+            return true;
+        }
+
+        if ("stopMediaIndex".equals(action)) {
+            stopMediaIndex();
+            callbackContext.success();
+            return true;
+        }
+
+        if ("getMediaCount".equals(action)) {
+            JSONObject opts = args.optJSONObject(0);
+            String type = opts != null ? opts.optString("mediaType", "all") : "all";
+            MediaExclusionRules exclusions = MediaExclusionRules.from(opts != null ? opts.optJSONObject("exclude") : null);
+            MediaFilters filters = MediaFilters.from(opts);
+            cordova.getThreadPool().execute(() -> {
+                try {
+                    callbackContext.success(countMedia("images".equals(type) || "videos".equals(type) ? type : "all",
+                            exclusions, filters));
+                } catch (Exception e) {
+                    callbackContext.error("Count error: " + e.getMessage());
+                }
+            });
+            return true;
+        }
+
+        if ("getAlbums".equals(action)) {
+            JSONObject opts = args.optJSONObject(0);
+            String type = opts != null ? opts.optString("mediaType", "all") : "all";
+            MediaExclusionRules exclusions = MediaExclusionRules.from(opts != null ? opts.optJSONObject("exclude") : null);
+            cordova.getThreadPool().execute(() -> {
+                try {
+                    callbackContext.success(getAlbums("images".equals(type) || "videos".equals(type) ? type : "all",
+                            exclusions));
+                } catch (Exception e) {
+                    callbackContext.error("Albums error: " + e.getMessage());
+                }
+            });
+            return true;
+        }
+
+        if ("getMediaChanges".equals(action)) {
+            JSONObject opts = args.optJSONObject(0);
+            String since = opts != null && !opts.isNull("since") ? opts.optString("since", null) : null;
+            MediaExclusionRules exclusions = MediaExclusionRules.from(opts != null ? opts.optJSONObject("exclude") : null);
+            cordova.getThreadPool().execute(() -> {
+                try {
+                    callbackContext.success(getMediaChanges(since, exclusions));
+                } catch (Exception e) {
+                    callbackContext.error("Changes error: " + e.getMessage());
+                }
+            });
+            return true;
+        }
+
+        if ("getCacheStats".equals(action)) {
+            getMediaExecutor().execute(() -> {
+                try {
+                    JSONObject stats = getCacheIndex().stats();
+                    stats.put("prefetch", getPrefetcher().stats());
+                    callbackContext.success(stats);
+                } catch (Exception e) {
+                    callbackContext.error("Cache error: " + e.getMessage());
+                }
+            });
+            return true;
+        }
+
+        if ("clearCache".equals(action)) {
+            JSONObject opts = args.optJSONObject(0);
+            long olderThan = opts != null ? opts.optLong("olderThan", 0) : 0;
+
+            getMediaExecutor().execute(() -> {
+                try {
+                    callbackContext.success(getCacheIndex().clear(olderThan));
+                } catch (Exception e) {
+                    callbackContext.error("Cache error: " + e.getMessage());
+                }
+            });
+            return true;
+        }
+
+        if ("getExif".equals(action)) {
+            JSONObject opts = args.optJSONObject(0);
+            JSONArray uris = opts != null ? opts.optJSONArray("uris") : null;
+            if (uris == null) {
+                callbackContext.error("uris is required");
+                return true;
             }
+
+            // keys : tableau de noms, ou "all" / absent pour toutes les balises
+            List<String> keys = null;
+            JSONArray keyArray = opts.optJSONArray("keys");
+            if (keyArray != null) {
+                keys = new ArrayList<>();
+                for (int i = 0; i < keyArray.length(); i++) {
+                    String key = keyArray.optString(i, null);
+                    if (key != null && !key.isEmpty()) keys.add(key);
+                }
+            }
+            final List<String> selected = keys;
+
+            cordova.getThreadPool().execute(() -> {
+                try {
+                    callbackContext.success(readExifBatch(uris, selected));
+                } catch (Exception e) {
+                    callbackContext.error("Exif error: " + e.getMessage());
+                }
+            });
             return true;
         }
 
@@ -204,37 +494,77 @@ public class MediaPicker extends CordovaPlugin {
         if (requestCode != REQUEST_CODE)
             return;
 
-        isPickerOpen = false;
+        final MediaRequest request = pendingPick;
+        pendingPick = null;
+        if (request == null)
+            return;
 
         if (resultCode != Activity.RESULT_OK || data == null) {
-            callbackContext.success(new JSONArray()); // empty array
+            jobs.remove(request.job.id);
+            request.callback.success(new JSONArray()); // empty array
             return;
         }
 
+        final boolean showLoader = request.showLoader;
+        final int selectionLimit = request.selectionLimit;
         if (showLoader)
             showLoaderOverlay();
 
+        final CallbackContext ctx = request.callback;
+        final ProcessOptions options = request.options;
+        final boolean events = options.sendsEvents();
+
         cordova.getThreadPool().execute(() -> {
-            ArrayList<JSONObject> results = new ArrayList<>();
-            ArrayList<String> errors = new ArrayList<>();
+            List<JSONObject> results = new ArrayList<>();
+            List<String> errors = Collections.synchronizedList(new ArrayList<>());
+            List<JSONObject> failures = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger emitted = new AtomicInteger();
+            AtomicBoolean cancelled = new AtomicBoolean(); // le lot entier a échoué, pas seulement des éléments
+            ItemListener listener = !events ? null : new ItemListener() {
+                @Override
+                public void onItem(JSONObject item) {
+                    // Le loader n'a plus de sens dès que le premier média est affichable
+                    if (emitted.getAndIncrement() == 0 && showLoader)
+                        hideLoaderOverlay();
+                    sendStreamItem(ctx, item);
+                }
+
+                @Override
+                public void onProgress(int index, long copied, long total) {
+                    if (options.progress)
+                        sendProgress(ctx, index, copied, total);
+                }
+
+                @Override
+                public void onTranscodeProgress(int index, double progress) {
+                    if (options.progress)
+                        sendTranscodeProgress(ctx, index, progress);
+                }
+            };
 
             try {
+                ArrayList<Uri> uris = new ArrayList<>();
+                ArrayList<Integer> indices = new ArrayList<>();
                 if (data.getClipData() != null) {
                     int count = Math.min(data.getClipData().getItemCount(), selectionLimit);
                     for (int i = 0; i < count; i++) {
-                        Uri uri = data.getClipData().getItemAt(i).getUri();
-                        JSONObject obj = copyUriToCache(uri, i, errors);
-                        if (obj != null)
-                            results.add(obj);
+                        uris.add(data.getClipData().getItemAt(i).getUri());
+                        indices.add(i);
                     }
                 } else if (data.getData() != null) {
-                    Uri uri = data.getData();
-                    JSONObject obj = copyUriToCache(uri, 0, errors);
-                    if (obj != null)
-                        results.add(obj);
+                    uris.add(data.getData());
+                    indices.add(0);
                 }
+                results = processInParallel(uris, indices, options, errors, failures, listener);
+            } catch (CancellationException e) {
+                errors.clear();
+                errors.add(e.getMessage());
+                cancelled.set(true);
             } catch (Exception e) {
                 errors.add("Unexpected error: " + e.getMessage());
+                cancelled.set(true);
+            } finally {
+                jobs.remove(request.job.id);
             }
 
             JSONArray array = new JSONArray();
@@ -244,15 +574,27 @@ public class MediaPicker extends CordovaPlugin {
             cordova.getActivity().runOnUiThread(() -> {
                 if (showLoader)
                     hideLoaderOverlay();
-                if (!errors.isEmpty()) {
-                    callbackContext.error(String.join("\n", errors));
+                if (options.partialSuccess && !cancelled.get()) {
+                    // Les éléments réussis sont gardés, les échecs sont rejouables avec retry(failures)
+                    sendBatch(ctx, options, array, toArray(failures));
+                } else if (!errors.isEmpty()) {
+                    ctx.error(String.join("\n", errors));
                 } else {
-                    callbackContext.success(array);
+                    sendResult(ctx, options, array);
                 }
+                endCacheBatch(request.job);
             });
         });
     }
 
+    // Résultat envoyé : l'éviction du cache peut reprendre, en épargnant encore les fichiers de l'appel
+    private void endCacheBatch(MediaJob job) {
+        long batch = job.cacheBatch;
+        if (batch < 0) return;
+        job.cacheBatch = -1;
+        getMediaExecutor().execute(() -> getCacheIndex().endBatch(batch));
+    }
+
     // Safe helper to check Photo Picker availability
     private boolean isPhotoPickerAvailable() {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
@@ -269,353 +611,1650 @@ public class MediaPicker extends CordovaPlugin {
         }
     }
 
-    // Récupère les derniers médias (images/vidéos), les met en cache si besoin et retourne un JSONArray avec leurs infos (id, uri, type, chemin cache, durée et miniature pour les vidéos)
-    private JSONArray getLastMedias(String mediaType, int limit, int offset) throws JSONException {
-        JSONArray result = new JSONArray();
-        ArrayList<JSONObjectWithTimestamp> tempList = new ArrayList<>();
-        ArrayList<String> errors = new ArrayList<>();
-
-        // Point d'arrêt : on récupère assez d'items pour couvrir la page actuelle
-        int endRange = offset + limit;
-
-        // 1. Fonction interne pour scanner le MediaStore
-        BiConsumer<String, Integer> fetchByType = (type, currentRange) -> {
-            try {
-                Uri collection = "images".equals(type) ?
-                        MediaStore.Images.Media.EXTERNAL_CONTENT_URI : MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
-
-                // On ajoute DATA et IS_PENDING à la projection pour le filtrage
-                String[] projection = {
-                        MediaStore.MediaColumns._ID,
-                        MediaStore.MediaColumns.DATE_ADDED,
-                        MediaStore.MediaColumns.DATA,
-                        (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.Q) ?
-                                MediaStore.MediaColumns.IS_PENDING : MediaStore.MediaColumns._ID
-                };
+    // Called from a worker thread each time an item of the batch is ready (completion order).
+    private interface ItemListener {
+        void onItem(JSONObject item);
 
-                // Filtre de base : ignorer ce qui est caché ou en attente
-                String selection = (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.Q) ?
-                        MediaStore.MediaColumns.IS_PENDING + " = 0" : null;
+        default void onProgress(int index, long copied, long total) {}
 
-                Cursor cursor = cordova.getContext().getContentResolver().query(
-                        collection, projection, selection, null,
-                        MediaStore.MediaColumns.DATE_ADDED + " DESC"
-                );
+        default void onTranscodeProgress(int index, double progress) {}
+    }
 
-                if (cursor == null) return;
+    // Runs copy/probe/thumbnail for several items at once on the media pool.
+    // At most maxConcurrent items of this batch are in flight, and with maxInFlightBytes at most that many
+    // bytes are being copied; results keep the order of uris. Throws CancellationException once cancelled.
+    // Each item that produces no result is also reported in failures (when not null) as {index, uri, code, message}.
+    private List<JSONObject> processInParallel(List<Uri> uris, List<Integer> indices, ProcessOptions options,
+                                               List<String> errors, List<JSONObject> failures,
+                                               ItemListener listener) throws InterruptedException {
+        int n = uris.size();
+        JSONObject[] slots = new JSONObject[n];
+        ArrayList<Future<?>> futures = new ArrayList<>(n);
+        Semaphore permits = new Semaphore(options.concurrency);
+        MediaJob job = options.job;
+        // Rien de ce que l'appel utilise n'est évincé avant l'envoi de son résultat (endCacheBatch)
+        if (job.cacheBatch < 0)
+            job.cacheBatch = getCacheIndex().beginBatch();
+        if (options.cacheMaxBytes > 0)
+            getCacheIndex().setMaxBytes(options.cacheMaxBytes);
+        ExecutorService executor = getMediaExecutor();
+
+        // Budget en Ko (les permis d'un Semaphore sont des int)
+        int budgetKb = (int) Math.min(Integer.MAX_VALUE, (options.maxInFlightBytes + 1023) / 1024);
+        Semaphore bytes = budgetKb > 0 && !COPY_NONE.equals(options.copyMode) ? new Semaphore(budgetKb) : null;
+
+        // Une requête projetée pour tout le lot (_ID IN (...) par collection MediaStore),
+        // sauf pour les éléments déjà préparés par le préchargement de la page précédente
+        Map<Uri, MediaInfo> infos;
+        if (options.prefetch > 0) {
+            infos = getPrefetcher().take(uris);
+            List<Uri> missing = new ArrayList<>();
+            for (Uri uri : uris) {
+                if (!infos.containsKey(uri))
+                    missing.add(uri);
+            }
+            if (!missing.isEmpty())
+                infos.putAll(getInfoResolver().resolveAll(missing));
+        } else {
+            infos = getInfoResolver().resolveAll(uris);
+        }
 
-                int idCol = cursor.getColumnIndex(MediaStore.MediaColumns._ID);
-                int dataCol = cursor.getColumnIndex(MediaStore.MediaColumns.DATA);
-                int dateAddedCol = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_ADDED);
+        for (int i = 0; i < n; i++) {
+            final int slot = i;
+            MediaInfo info = infos.get(uris.get(slot));
+            // Taille inconnue : tout le budget, l'élément est copié seul
+            final int weight = bytes == null ? 0
+                    : info.size > 0 ? (int) Math.max(1, Math.min(budgetKb, (info.size + 1023) / 1024)) : budgetKb;
+
+            if (!acquire(permits, 1, job))
+                break;
+            if (weight > 0 && !acquire(bytes, weight, job)) {
+                permits.release();
+                break;
+            }
+            try {
+                Future<?> future = executor.submit(() -> {
+                    ItemErrors itemErrors = new ItemErrors();
+                    try {
+                        slots[slot] = copyUriToCache(info, indices.get(slot), options, itemErrors, listener);
+                        if (listener != null && slots[slot] != null && options.stream && !job.isCancelled())
+                            listener.onItem(slots[slot]);
+                    } catch (CancellationException e) {
+                        itemErrors.fail(ItemErrors.CANCELLED, e.getMessage());
+                        throw e;
+                    } catch (RuntimeException e) {
+                        itemErrors.fail(ItemErrors.UNKNOWN, "Item " + indices.get(slot) + " error: " + e);
+                        throw e;
+                    } finally {
+                        errors.addAll(itemErrors.messages);
+                        if (slots[slot] == null && failures != null)
+                            failures.add(itemErrors.toFailure(indices.get(slot), uris.get(slot)));
+                        permits.release();
+                        if (weight > 0) bytes.release(weight);
+                    }
+                });
+                futures.add(future);
+                job.track(future);
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                if (weight > 0) bytes.release(weight);
+                String message = "Item " + indices.get(slot) + " rejected: " + e.getMessage();
+                errors.add(message);
+                if (failures != null) {
+                    ItemErrors rejected = new ItemErrors();
+                    rejected.fail(ItemErrors.REJECTED, message);
+                    failures.add(rejected.toFailure(indices.get(slot), uris.get(slot)));
+                }
+            }
+        }
 
-                int count = 0;
-                while (cursor.moveToNext() && count < currentRange) {
-                    String path = cursor.getString(dataCol);
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                errors.add("Worker error: " + e.getCause());
+            } catch (CancellationException ignored) {
+                // annulé par cancel(jobId)
+            } finally {
+                job.untrack(f);
+            }
+        }
 
-                    // FILTRE CRITIQUE : Ignorer les dossiers cachés
-                    if (path != null && (path.contains("/.") || path.toLowerCase().contains("vault"))) {
-                        continue;
-                    }
+        getCacheIndex().flush();
+        job.checkCancelled();
 
-                    long id = cursor.getLong(idCol);
-                    Uri mediaUri = Uri.withAppendedPath(collection, String.valueOf(id));
-                    long ts = cursor.getLong(dateAddedCol) * 1000L;
+        ArrayList<JSONObject> results = new ArrayList<>(n);
+        for (JSONObject o : slots) {
+            if (o != null)
+                results.add(o);
+        }
+        if (options.dedup != null)
+            collapseDuplicates(results);
+        return results;
+    }
 
-                    tempList.add(new JSONObjectWithTimestamp(new JSONObject(), ts, mediaUri, type));
-                    count++;
+    // dedup : un seul élément par contenu, le premier dans l'ordre du lot, qui liste les index des
+    // autres dans "duplicates". Les éléments déjà émis en stream ne sont pas retirés.
+    private static void collapseDuplicates(List<JSONObject> results) {
+        Map<String, JSONObject> firsts = new HashMap<>();
+        for (Iterator<JSONObject> it = results.iterator(); it.hasNext(); ) {
+            JSONObject item = it.next();
+            String hash = item.optString("contentHash", "");
+            if (hash.isEmpty()) continue;
+            JSONObject first = firsts.get(hash);
+            if (first == null) {
+                firsts.put(hash, item);
+                continue;
+            }
+            JSONArray duplicates = first.optJSONArray("duplicates");
+            if (duplicates == null) {
+                duplicates = new JSONArray();
+                try {
+                    first.put("duplicates", duplicates);
+                } catch (JSONException e) {
+                    continue;
                 }
-                cursor.close();
-            } catch (Exception e) {
-                Log.e("MediaPicker", "Error fetching " + type + ": " + e.getMessage());
             }
-        };
+            duplicates.put(item.optInt("index"));
+            it.remove();
+        }
+    }
 
-        // 2. Exécution du scan selon le type demandé
-        if ("all".equals(mediaType)) {
-            fetchByType.accept("images", endRange);
-            fetchByType.accept("videos", endRange);
-        } else {
-            fetchByType.accept(mediaType.equals("images") ? "images" : "videos", endRange);
+    // One EXIF map per location, in input order (null when the file cannot be read).
+    // Each file is parsed once on the media pool; MediaStore identities come from one batched query.
+    private JSONArray readExifBatch(JSONArray locations, List<String> keys) throws InterruptedException {
+        int n = locations.length();
+        List<Uri> contentUris = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Uri uri = Uri.parse(locations.optString(i, ""));
+            if (ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) contentUris.add(uri);
+        }
+        Map<Uri, MediaInfo> infos = getInfoResolver().resolveAll(contentUris);
+
+        Object[] slots = new Object[n];
+        ArrayList<Future<?>> futures = new ArrayList<>(n);
+        ExifReader reader = getExifReader();
+        for (int i = 0; i < n; i++) {
+            final int slot = i;
+            final String location = locations.optString(i, "");
+            futures.add(getMediaExecutor().submit(() -> {
+                try {
+                    MediaInfo info = infos.get(Uri.parse(location));
+                    slots[slot] = ExifReader.select(reader.read(location, info), keys);
+                } catch (Exception e) {
+                    Log.w("MediaPicker", "Exif unavailable for " + location + ": " + e.getMessage());
+                }
+            }));
         }
 
-        // 3. Tri global par date (du plus récent au plus ancien)
-        tempList.sort((a, b) -> Long.compare(b.timestamp, a.timestamp));
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (ExecutionException ignored) {}
+        }
 
-        // 4. Traitement final : pagination et copie physique des fichiers
-        // On ne traite que la tranche [offset -> offset + limit]
-        for (int i = offset; i < Math.min(offset + limit, tempList.size()); i++) {
-            JSONObjectWithTimestamp item = tempList.get(i);
+        JSONArray result = new JSONArray();
+        for (Object o : slots) {
+            result.put(o != null ? o : JSONObject.NULL);
+        }
+        return result;
+    }
 
-            // C'est ici qu'on fait le travail lourd (lecture fichier + copie cache)
-            JSONObject mediaInfo = copyUriToCache(item.uri, i, errors);
+    // Attente d'un permis qui abandonne dès que le travail est annulé (les tâches annulées avant
+    // d'avoir démarré ne rendent jamais leurs permis)
+    private static boolean acquire(Semaphore semaphore, int permits, MediaJob job) throws InterruptedException {
+        while (!semaphore.tryAcquire(permits, 100, TimeUnit.MILLISECONDS)) {
+            if (job.isCancelled())
+                return false;
+        }
+        if (job.isCancelled()) {
+            semaphore.release(permits);
+            return false;
+        }
+        return true;
+    }
 
-            if (mediaInfo != null) {
-                result.put(mediaInfo);
-            }
+    // Streaming mode: one kept PluginResult per item, then a final "complete" event.
+    private void sendStreamItem(CallbackContext ctx, JSONObject item) {
+        try {
+            JSONObject event = new JSONObject();
+            event.put("event", "item");
+            event.put("item", item);
+            PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+            result.setKeepCallback(true);
+            ctx.sendPluginResult(result);
+        } catch (JSONException e) {
+            Log.e("MediaPicker", "Stream item error: " + e.getMessage());
         }
+    }
 
-        return result;
+    private void sendTranscodeProgress(CallbackContext ctx, int index, double progress) {
+        try {
+            JSONObject event = new JSONObject();
+            event.put("event", "transcode");
+            event.put("index", index);
+            event.put("progress", progress);
+            PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+            result.setKeepCallback(true);
+            ctx.sendPluginResult(result);
+        } catch (JSONException e) {
+            Log.e("MediaPicker", "Transcode progress error: " + e.getMessage());
+        }
     }
 
-    // Internal wrapper to store timestamp without exposing it
-    private static class JSONObjectWithTimestamp {
-        JSONObject json;
-        long timestamp;
-        Uri uri;
-        String type;
+    private void sendProgress(CallbackContext ctx, int index, long copied, long total) {
+        try {
+            JSONObject event = new JSONObject();
+            event.put("event", "progress");
+            event.put("index", index);
+            event.put("bytesCopied", copied);
+            event.put("totalBytes", total);
+            PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+            result.setKeepCallback(true);
+            ctx.sendPluginResult(result);
+        } catch (JSONException e) {
+            Log.e("MediaPicker", "Progress error: " + e.getMessage());
+        }
+    }
 
-        JSONObjectWithTimestamp(JSONObject json, long timestamp, Uri uri, String type) {
-            this.json = json;
-            this.timestamp = timestamp;
-            this.uri = uri;
-            this.type = type;
+    // Sends the final result: a "complete" event when intermediate events were sent, a plain array otherwise.
+    private void sendResult(CallbackContext ctx, ProcessOptions options, JSONArray items) {
+        if (options.sendsEvents()) {
+            sendStreamComplete(ctx, items);
+        } else {
+            ctx.success(items);
         }
     }
 
-    // Generates a video thumbnail, stores it in cache, and returns the file path.
-    private static final String TAG = "VideoThumbGenerator";
+    // partialSuccess / retry: {items, failures}, the batch never fails because of a single item
+    private void sendBatch(CallbackContext ctx, ProcessOptions options, JSONArray items, JSONArray failures) {
+        try {
+            JSONObject result = new JSONObject();
+            if (options.sendsEvents())
+                result.put("event", "complete");
+            result.put("items", items);
+            result.put("failures", failures);
+            ctx.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+        } catch (JSONException e) {
+            ctx.error("Batch error: " + e.getMessage());
+        }
+    }
 
-    // For Android < Q, retrieves the actual file path of the video
-    private String getRealPathFromUri(Uri contentUri) {
-        String[] proj = { MediaStore.Video.Media.DATA };
-        Cursor cursor = cordova.getContext().getContentResolver().query(contentUri, proj, null, null, null);
-        if (cursor != null) {
-            int colIndex = cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DATA);
-            if (cursor.moveToFirst()) {
-                String path = cursor.getString(colIndex);
-                cursor.close();
-                return path;
-            }
-            cursor.close();
+    // Échecs triés par index, comme les éléments
+    private static JSONArray toArray(List<JSONObject> failures) {
+        List<JSONObject> sorted = new ArrayList<>(failures);
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.optInt("index"), b.optInt("index")));
+        JSONArray array = new JSONArray();
+        for (JSONObject failure : sorted)
+            array.put(failure);
+        return array;
+    }
+
+    // Keyset pagination: {items, nextPageToken} (nextPageToken is null on the last page)
+    private void sendPage(CallbackContext ctx, ProcessOptions options, MediaPage page) {
+        try {
+            JSONObject result = new JSONObject();
+            if (options.sendsEvents())
+                result.put("event", "complete");
+            result.put("items", page.items);
+            result.put("nextPageToken", page.nextPageToken != null ? page.nextPageToken : JSONObject.NULL);
+            if (page.failures != null)
+                result.put("failures", page.failures);
+            ctx.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+        } catch (JSONException e) {
+            ctx.error("Page error: " + e.getMessage());
         }
-        return null;
     }
 
-    private JSONObject copyUriToCache(Uri uri, int index, ArrayList<String> errors) {
+    private void sendStreamComplete(CallbackContext ctx, JSONArray items) {
         try {
-            String fileName = null;
-            long fileSize = 0;
-            String mime = null;
+            JSONObject event = new JSONObject();
+            event.put("event", "complete");
+            event.put("items", items);
+            ctx.sendPluginResult(new PluginResult(PluginResult.Status.OK, event));
+        } catch (JSONException e) {
+            ctx.error("Stream error: " + e.getMessage());
+        }
+    }
 
-            Cursor cursor = cordova.getContext().getContentResolver()
-                    .query(uri, null, null, null, null);
+    private synchronized MediaCopyEngine getCopyEngine() {
+        if (copyEngine == null) {
+            copyEngine = new MediaCopyEngine(cordova.getContext().getContentResolver());
+        }
+        return copyEngine;
+    }
 
-            if (cursor != null) {
-                int nameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
-                int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
+    private synchronized MediaHasher getHasher() {
+        if (mediaHasher == null) {
+            mediaHasher = new MediaHasher(cordova.getContext().getContentResolver());
+        }
+        return mediaHasher;
+    }
 
-                if (cursor.moveToFirst()) {
-                    if (nameIndex != -1) fileName = cursor.getString(nameIndex);
-                    if (sizeIndex != -1) fileSize = cursor.getLong(sizeIndex);
-                }
-                cursor.close();
-            }
+    private synchronized MediaChunkReader getChunkReader() {
+        if (chunkReader == null) {
+            chunkReader = new MediaChunkReader(cordova.getContext().getContentResolver());
+        }
+        return chunkReader;
+    }
 
-            String ext = getExtension(uri);
-            if (ext == null || ext.isEmpty()) ext = "dat";
+    private synchronized MediaInfoResolver getInfoResolver() {
+        if (infoResolver == null) {
+            infoResolver = new MediaInfoResolver(cordova.getContext().getContentResolver());
+        }
+        return infoResolver;
+    }
 
-            String id = String.valueOf(uri.hashCode());
+    private synchronized ImageTranscoder getImageTranscoder() {
+        if (imageTranscoder == null) {
+            imageTranscoder = new ImageTranscoder(cordova.getContext().getContentResolver());
+        }
+        return imageTranscoder;
+    }
 
-            // ✅ Nom unique basé sur URI (évite les doublons)
-            String baseName = id + "_" + index;
+    private synchronized ThumbnailGenerator getThumbnailGenerator() {
+        if (thumbnailGenerator == null) {
+            thumbnailGenerator = new ThumbnailGenerator(cordova.getContext().getContentResolver(), getImageTranscoder());
+        }
+        return thumbnailGenerator;
+    }
 
-            File dest = new File(
-                    cordova.getContext().getCacheDir(),
-                    baseName + "." + ext
-            );
+    private synchronized VideoTranscoder getVideoTranscoder() {
+        if (videoTranscoder == null) {
+            videoTranscoder = new VideoTranscoder(cordova.getContext().getContentResolver());
+        }
+        return videoTranscoder;
+    }
 
-            // ✅ Copier uniquement si pas déjà présent
-            if (!dest.exists()) {
+    private synchronized ExifReader getExifReader() {
+        if (exifReader == null) {
+            exifReader = new ExifReader(cordova.getContext().getContentResolver());
+        }
+        return exifReader;
+    }
+
+    private synchronized MediaCacheIndex getCacheIndex() {
+        if (cacheIndex == null) {
+            cacheIndex = new MediaCacheIndex(
+                new File(cordova.getContext().getCacheDir(), "MediaPicker"), MediaCacheIndex.DEFAULT_MAX_BYTES);
+        }
+        return cacheIndex;
+    }
+
+    private synchronized ExecutorService getMediaExecutor() {
+        if (mediaExecutor == null || mediaExecutor.isShutdown()) {
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                MAX_WORKERS, MAX_WORKERS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "MediaPicker-worker-" + threadCount.incrementAndGet());
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                });
+            pool.allowCoreThreadTimeOut(true);
+            mediaExecutor = pool;
+        }
+        return mediaExecutor;
+    }
 
-                try (InputStream in = cordova.getContext()
-                        .getContentResolver()
-                        .openInputStream(uri);
+    private synchronized MediaPrefetcher getPrefetcher() {
+        if (prefetcher == null) {
+            prefetcher = new MediaPrefetcher();
+            // onTrimMemory annule le préchargement en cours
+            cordova.getContext().registerComponentCallbacks(prefetcher);
+        }
+        return prefetcher;
+    }
 
-                     FileOutputStream out = new FileOutputStream(dest)) {
+    // Une nouvelle requête passe avant le préchargement de la précédente
+    private synchronized void cancelPrefetch() {
+        if (prefetcher != null)
+            prefetcher.cancel();
+    }
 
-                    byte[] buffer = new byte[8192];
-                    int len;
+    // Prépare en tâche de fond les options.prefetch éléments qui suivent `after` : métadonnées (gardées
+    // par le prefetcher pour la page suivante) et miniatures (dans le cache). Aucun fichier n'est copié.
+    private void prefetchAfter(String mediaType, PageKey after, ProcessOptions options) {
+        String type = "all".equals(mediaType) ? "all" : "images".equals(mediaType) ? "images" : "videos";
+        MediaPrefetcher warmer = getPrefetcher();
+        warmer.schedule(cancelled -> {
+            List<JSONObjectWithTimestamp> next = new ArrayList<>();
+            MediaIndex index = indexFor(options.exclusions, options.filters);
+            if (index != null) {
+                indexPage(index, type, after, 0, options.prefetch, options, next);
+            } else {
+                fetchPage(type, after, 0, options.prefetch, options, next);
+            }
 
-                    while (in != null && (len = in.read(buffer)) > 0) {
-                        out.write(buffer, 0, len);
-                    }
+            List<Uri> uris = new ArrayList<>(next.size());
+            for (JSONObjectWithTimestamp item : next)
+                uris.add(item.uri);
+            Map<Uri, MediaInfo> infos = getInfoResolver().resolveAll(uris);
+
+            MediaCacheIndex cache = getCacheIndex();
+            for (JSONObjectWithTimestamp item : next) {
+                if (cancelled.get() || Thread.currentThread().isInterrupted())
+                    return;
+                MediaInfo info = infos.get(item.uri);
+                if (info == null)
+                    continue;
+                warmer.offer(info);
+
+                boolean video = "videos".equals(item.type);
+                if (video || options.imageThumbnails) {
+                    String baseName = MediaCacheIndex.keyFor(info.uri, info.size, info.dateModified);
+                    if (getThumbnailGenerator().hasMissing(baseName, options.thumbnails, cache))
+                        getThumbnailGenerator().generate(info.uri, video, baseName, options.thumbnails, cache, null);
                 }
             }
+            cache.flush();
+        });
+    }
 
-            if (fileName == null) fileName = dest.getName();
-            if (fileSize == 0) fileSize = dest.length();
-
-            mime = resolveMime(uri, dest, ext);
-            // ==============================
-            // HEIC → JPEG CONVERSION
-            // ==============================
-            String originalMime = cordova.getContext()
-                    .getContentResolver()
-                    .getType(uri);
+    private static int clampConcurrency(int requested) {
+        return Math.max(1, Math.min(requested, MAX_WORKERS));
+    }
 
-            boolean isHeic = false;
-            if (mime != null) {
-                isHeic = mime.toLowerCase().contains("heic")
-                        || mime.toLowerCase().contains("heif");
+    @Override
+    public void onDestroy() {
+        synchronized (this) {
+            for (AtomicBoolean flag : activeTranscodes.keySet()) flag.set(true);
+            if (mediaExecutor != null) {
+                mediaExecutor.shutdownNow();
+                mediaExecutor = null;
+            }
+            if (cacheIndex != null) {
+                cacheIndex.flush();
+            }
+            if (mediaIndex != null) {
+                mediaIndex.stop();
+                mediaIndex = null;
+                mediaIndexCallback = null;
             }
+            if (prefetcher != null) {
+                cordova.getContext().unregisterComponentCallbacks(prefetcher);
+                prefetcher.shutdown();
+                prefetcher = null;
+            }
+        }
+        super.onDestroy();
+    }
 
-            if (!isHeic && ext != null) {
-                isHeic = ext.equalsIgnoreCase("heic")
-                        || ext.equalsIgnoreCase("heif");
+    // Récupère les derniers médias (images/vidéos), les met en cache si besoin et retourne un JSONArray avec leurs infos (id, uri, type, chemin cache, durée et miniature pour les vidéos)
+    private MediaPage getLastMedias(String mediaType, int limit, int offset, PageKey after, ProcessOptions options,
+                                    ItemListener listener) throws JSONException, InterruptedException {
+        JSONArray result = new JSONArray();
+        ArrayList<JSONObjectWithTimestamp> tempList = new ArrayList<>();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        List<JSONObject> failures = options.partialSuccess ? Collections.synchronizedList(new ArrayList<>()) : null;
+
+        // 1-2. Scan du MediaStore, limite (et offset ou clé de pagination) poussés dans la requête.
+        // Pour "all", une seule requête MediaStore.Files (MEDIA_TYPE image ou vidéo) déjà triée ;
+        // si elle échoue, fusion des deux curseurs triés qui ne garde que la page.
+        String type = "all".equals(mediaType) ? "all" : mediaType.equals("images") ? "images" : "videos";
+        int sqlOffset = after != null ? 0 : offset;
+        MediaIndex index = indexFor(options.exclusions, options.filters);
+        try {
+            if (index != null) {
+                indexPage(index, type, after, sqlOffset, limit, options, tempList);
+            } else {
+                fetchPage(type, after, sqlOffset, limit, options, tempList);
             }
+        } catch (Exception e) {
+            Log.e("MediaPicker", "Error fetching " + type + ": " + e.getMessage());
+            tempList.clear();
+            if ("all".equals(type)) {
+                try {
+                    mergeCollections(after, sqlOffset, limit, options, tempList);
+                } catch (Exception mergeError) {
+                    Log.e("MediaPicker", "Error merging collections: " + mergeError.getMessage());
+                }
+            }
+        }
 
-            if (isHeic) {
+        int end = tempList.size();
+        int firstIndex = after != null ? 0 : offset;
 
-                try {
+        // Page pleine : la suivante commence après le dernier élément renvoyé
+        String nextPageToken = end > 0 && end == limit
+            ? new PageKey(tempList.get(end - 1)).encode() : null;
+
+        // 4a. metadataOnly : tout vient des colonnes MediaStore, aucune lecture de fichier
+        if (options.metadataOnly) {
+            for (int i = 0; i < end; i++) {
+                JSONObject mediaInfo = metadataOnlyResult(tempList.get(i), firstIndex + i);
+                result.put(mediaInfo);
+                if (listener != null && options.stream)
+                    listener.onItem(mediaInfo);
+            }
+            return new MediaPage(result, nextPageToken, failures != null ? new JSONArray() : null);
+        }
+
+        // 4. Traitement final : pagination et copie physique des fichiers
+        // On ne traite que la tranche de la page
+        ArrayList<Uri> uris = new ArrayList<>();
+        ArrayList<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < end; i++) {
+            uris.add(tempList.get(i).uri);
+            indices.add(firstIndex + i);
+        }
 
-                    Bitmap bitmap = BitmapFactory.decodeFile(dest.getAbsolutePath());
+        // C'est ici qu'on fait le travail lourd (lecture fichier + copie cache), en parallèle
+        for (JSONObject mediaInfo : processInParallel(uris, indices, options, errors, failures, listener)) {
+            result.put(mediaInfo);
+        }
 
-                    if (bitmap != null) {
+        return new MediaPage(result, nextPageToken, failures != null ? toArray(failures) : null);
+    }
 
-                        File jpegFile = new File(
-                                cordova.getContext().getCacheDir(),
-                                baseName + ".jpg"
-                        );
+    private static final java.util.Comparator<JSONObjectWithTimestamp> NEWEST_FIRST = (a, b) -> {
+        int byDate = Long.compare(b.timestamp, a.timestamp);
+        return byDate != 0 ? byDate : Long.compare(b.id, a.id);
+    };
 
-                        try (FileOutputStream out = new FileOutputStream(jpegFile)) {
-                            bitmap.compress(Bitmap.CompressFormat.JPEG, 95, out);
-                            out.flush();
-                        }
+    // Lit au plus `wanted` lignes d'une collection ("images", "videos", ou "all" via MediaStore.Files),
+    // à partir de la clé `after` ou de `sqlOffset`. Les exclusions font partie de la sélection :
+    // chaque ligne lue appartient à la page.
+    private void fetchPage(String type, PageKey after, int sqlOffset, int wanted, ProcessOptions options,
+                           List<JSONObjectWithTimestamp> out) throws JSONException {
+        Uri collection = collectionFor(type);
+        String sortOrder = MediaStore.MediaColumns.DATE_ADDED + " DESC, " + MediaStore.MediaColumns._ID + " DESC";
 
-                        // Copier orientation AVANT delete
-                        try {
-                            ExifInterface oldExif = new ExifInterface(dest.getAbsolutePath());
-                            ExifInterface newExif = new ExifInterface(jpegFile.getAbsolutePath());
+        ArrayList<String> selectionArgs = new ArrayList<>();
+        String selection = pageSelection(type, after, options.exclusions, options.filters, selectionArgs);
 
-                            String orientation = oldExif.getAttribute(ExifInterface.TAG_ORIENTATION);
-                            if (orientation != null) {
-                                newExif.setAttribute(ExifInterface.TAG_ORIENTATION, orientation);
-                                newExif.saveAttributes();
-                            }
-                        } catch (Exception ignored) {}
+        Cursor cursor = queryPaged(collection, pageProjection(type), selection,
+                selectionArgs.toArray(new String[0]), sortOrder, wanted, after != null ? 0 : sqlOffset);
 
-                        bitmap.recycle();
+        if (cursor == null) {
+            throw new IllegalStateException("No cursor for " + collection);
+        }
 
-                        dest.delete();
+        try {
+            // Un provider qui ignorerait la limite ne nous fait pas lire plus que la page
+            RowReader reader = new RowReader(cursor, type, options);
+            JSONObjectWithTimestamp item;
+            while ((item = reader.next(wanted)) != null) {
+                out.add(item);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
 
-                        dest = jpegFile;
-                        ext = "jpg";
-                        mime = "image/jpeg";
-                        fileName = jpegFile.getName();
-                        fileSize = jpegFile.length();
-                    }
+    // (Re)construit l'index mémoire pour ces exclusions ; les changements sont poussés à callback
+    private int startMediaIndex(MediaExclusionRules exclusions, CallbackContext callback) {
+        ArrayList<String> selectionArgs = new ArrayList<>();
+        String selection = pageSelection("all", null, exclusions, null, selectionArgs);
+        MediaIndex index = new MediaIndex(cordova.getContext().getContentResolver(), selection,
+                selectionArgs.toArray(new String[0]), this::sendMediaChanged);
+        index.start();
+
+        MediaIndex previous;
+        synchronized (this) {
+            previous = mediaIndex;
+            mediaIndex = index;
+            mediaIndexCallback = callback;
+        }
+        if (previous != null)
+            previous.stop();
+        return index.count(0);
+    }
 
-                } catch (Exception e) {
-                    errors.add("HEIC conversion error: " + e.getMessage());
+    private void stopMediaIndex() {
+        MediaIndex previous;
+        synchronized (this) {
+            previous = mediaIndex;
+            mediaIndex = null;
+            mediaIndexCallback = null;
+        }
+        if (previous != null)
+            previous.stop();
+    }
+
+    private synchronized MediaChangeTracker getChangeTracker() {
+        if (changeTracker == null) {
+            changeTracker = new MediaChangeTracker(cordova.getContext());
+        }
+        return changeTracker;
+    }
+
+    // Ajouts et modifications depuis le jeton `since` (lignes metadataOnly, requête generation / date),
+    // suppressions par différence avec le snapshot d'ids du jeton. reset : jeton absent, périmé ou d'une
+    // autre base, resynchroniser tout.
+    // Les ids visibles viennent de l'index en cours (mémoire) ; sans index, seul un reset parcourt les _ID
+    // (O(bibliothèque)), sinon le snapshot est reporté avec les lignes lues et les suppressions attendent
+    // le prochain appel fait avec un index (deletionsChecked: false)
+    private JSONObject getMediaChanges(String since, MediaExclusionRules exclusions) throws JSONException {
+        MediaChangeTracker tracker = getChangeTracker();
+        ArrayList<String> baseArgs = new ArrayList<>();
+        String base = pageSelection("all", null, exclusions, null, baseArgs);
+        String signature = MediaChangeTracker.signature(base, baseArgs);
+
+        MediaChangeTracker.Token from = MediaChangeTracker.Token.decode(since);
+        long[] before = from != null ? tracker.loadSnapshot(signature, from) : null;
+
+        // Jeton lu avant les lignes : un changement concurrent sera revu, jamais perdu
+        MediaChangeTracker.Token now = tracker.current();
+        boolean reset = before == null || !now.comparableTo(from);
+        MediaIndex index = indexFor(exclusions, null);
+        long[] keys = index != null ? index.keys() : reset ? visibleKeys(base, baseArgs) : null;
+
+        JSONArray added = new JSONArray();
+        JSONArray modified = new JSONArray();
+        JSONArray deleted = new JSONArray();
+        if (!reset) {
+            List<Long> seen = new ArrayList<>();
+            readChangedRows(from, base, baseArgs, added, modified, seen);
+            if (keys != null) {
+                for (long key : MediaChangeTracker.missing(before, keys)) {
+                    String type = (key & 1) == 1 ? "videos" : "images";
+                    deleted.put(Uri.withAppendedPath(collectionFor(type), String.valueOf(key >> 1)).toString());
                 }
+            } else {
+                keys = MediaChangeTracker.union(before, seen);
             }
+        }
+        tracker.saveSnapshot(signature, now, keys);
+
+        JSONObject result = new JSONObject();
+        result.put("token", now.encode());
+        result.put("reset", reset);
+        result.put("deletionsChecked", reset || index != null);
+        result.put("added", added);
+        result.put("modified", modified);
+        result.put("deleted", deleted);
+        return result;
+    }
 
-            JSONObject obj = new JSONObject();
+    // Toutes les identités visibles, triées : seules _ID et MEDIA_TYPE sont lues
+    private long[] visibleKeys(String selection, List<String> selectionArgs) {
+        try (Cursor cursor = cordova.getContext().getContentResolver().query(collectionFor("all"),
+                new String[]{MediaStore.MediaColumns._ID, MediaStore.Files.FileColumns.MEDIA_TYPE},
+                selection, selectionArgs.toArray(new String[0]), MediaStore.MediaColumns._ID + " ASC")) {
+            if (cursor == null)
+                return new long[0];
+            long[] keys = new long[cursor.getCount()];
+            int n = 0;
+            while (cursor.moveToNext() && n < keys.length) {
+                boolean video = cursor.getInt(1) == MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
+                keys[n++] = cursor.getLong(0) << 1 | (video ? 1 : 0);
+            }
+            return Arrays.copyOf(keys, n);
+        }
+    }
 
-            String type = "other";
+    // seen : identités (id << 1 | 1 pour une vidéo) des lignes lues, pour reporter le snapshot sans index
+    private void readChangedRows(MediaChangeTracker.Token from, String base, List<String> baseArgs,
+                                 JSONArray added, JSONArray modified, List<Long> seen) throws JSONException {
+        ProcessOptions rowOptions = new ProcessOptions();
+        rowOptions.metadataOnly = true;
+        ContentResolver resolver = cordova.getContext().getContentResolver();
+
+        for (Map.Entry<String, Long> volume : from.values.entrySet()) {
+            ArrayList<String> selectionArgs = new ArrayList<>(baseArgs);
+            StringBuilder selection = new StringBuilder(base != null ? "(" + base + ") AND " : "");
+            String addedColumn;
+            Uri collection;
+            String since = String.valueOf(volume.getValue());
+            ArrayList<String> projection = new ArrayList<>(Arrays.asList(pageProjection("all")));
+
+            if (from.generations && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                collection = MediaStore.Files.getContentUri(volume.getKey());
+                addedColumn = MediaStore.MediaColumns.GENERATION_ADDED;
+                selection.append(MediaStore.MediaColumns.GENERATION_MODIFIED).append(" > ?");
+                selectionArgs.add(since);
+            } else {
+                collection = collectionFor("all");
+                addedColumn = MediaStore.MediaColumns.DATE_ADDED;
+                selection.append("(").append(MediaStore.MediaColumns.DATE_ADDED).append(" > ? OR ")
+                    .append(MediaStore.MediaColumns.DATE_MODIFIED).append(" > ?)");
+                selectionArgs.add(since);
+                selectionArgs.add(since);
+            }
+            if (!projection.contains(addedColumn))
+                projection.add(addedColumn);
+
+            try (Cursor cursor = resolver.query(collection, projection.toArray(new String[0]), selection.toString(),
+                    selectionArgs.toArray(new String[0]), MediaStore.MediaColumns.DATE_ADDED + " DESC, "
+                            + MediaStore.MediaColumns._ID + " DESC")) {
+                if (cursor == null)
+                    continue;
+                int addedCol = cursor.getColumnIndex(addedColumn);
+                RowReader reader = new RowReader(cursor, "all", rowOptions);
+                JSONObjectWithTimestamp item;
+                while ((item = reader.next(Integer.MAX_VALUE)) != null) {
+                    boolean isNew = cursor.getLong(addedCol) > volume.getValue();
+                    JSONArray target = isNew ? added : modified;
+                    target.put(metadataOnlyResult(item, target.length()));
+                    seen.add(item.id << 1 | ("videos".equals(item.type) ? 1 : 0));
+                }
+            }
+        }
+    }
 
-        /* ===============================
-           IMAGE
-         =============================== */
-            if (mime != null && mime.startsWith("image/")){
+    // L'index en cours s'il a été construit avec la même sélection, sinon null (requête MediaStore)
+    // (les filtres de getLastMedias changent la sélection : une page filtrée interroge MediaStore)
+    private synchronized MediaIndex indexFor(MediaExclusionRules exclusions, MediaFilters filters) {
+        // L'index est construit sans filtre : une page filtrée passe toujours par MediaStore
+        if (mediaIndex == null || (filters != null && !filters.isEmpty()))
+            return null;
+        ArrayList<String> selectionArgs = new ArrayList<>();
+        String selection = pageSelection("all", null, exclusions, null, selectionArgs);
+        return mediaIndex.matches(selection, selectionArgs.toArray(new String[0])) ? mediaIndex : null;
+    }
 
-                type = "image";
+    private static int mediaTypeOf(String type) {
+        return "images".equals(type) ? MediaIndex.IMAGE : "videos".equals(type) ? MediaIndex.VIDEO : 0;
+    }
 
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inJustDecodeBounds = true;
+    // Page lue dans l'index ; en metadataOnly, les colonnes de la page viennent d'une requête _ID IN (...)
+    private void indexPage(MediaIndex index, String type, PageKey after, int offset, int wanted, ProcessOptions options,
+                           List<JSONObjectWithTimestamp> out) throws JSONException {
+        List<MediaIndex.Row> rows = index.page(mediaTypeOf(type), after != null,
+                after != null ? after.dateAdded : 0, after != null ? after.id : 0, offset, wanted);
+        for (MediaIndex.Row row : rows) {
+            String rowType = row.mediaType == MediaIndex.VIDEO ? "videos" : "images";
+            Uri mediaUri = Uri.withAppendedPath(collectionFor(rowType), String.valueOf(row.id));
+            out.add(new JSONObjectWithTimestamp(new JSONObject(), row.dateAdded * 1000L, row.id, mediaUri, rowType));
+        }
+        if (options.metadataOnly)
+            readColumns(out);
+    }
 
-                BitmapFactory.decodeFile(dest.getAbsolutePath(), options);
+    private void readColumns(List<JSONObjectWithTimestamp> items) throws JSONException {
+        Map<Long, JSONObjectWithTimestamp> byId = new HashMap<>();
+        for (JSONObjectWithTimestamp item : items)
+            byId.put(item.id, item);
+
+        ContentResolver resolver = cordova.getContext().getContentResolver();
+        for (int start = 0; start < items.size(); start += 500) {
+            List<JSONObjectWithTimestamp> chunk = items.subList(start, Math.min(items.size(), start + 500));
+            StringBuilder selection = new StringBuilder(MediaStore.MediaColumns._ID).append(" IN (");
+            String[] selectionArgs = new String[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                selection.append(i == 0 ? "?" : ", ?");
+                selectionArgs[i] = String.valueOf(chunk.get(i).id);
+            }
+            selection.append(")");
 
-                obj.put("width", options.outWidth);
-                obj.put("height", options.outHeight);
+            try (Cursor cursor = resolver.query(collectionFor("all"), pageProjection("all"),
+                    selection.toString(), selectionArgs, null)) {
+                if (cursor == null)
+                    continue;
+                int idCol = cursor.getColumnIndex(MediaStore.MediaColumns._ID);
+                RowColumns cols = new RowColumns(cursor);
+                while (cursor.moveToNext()) {
+                    JSONObjectWithTimestamp item = byId.get(cursor.getLong(idCol));
+                    if (item != null)
+                        item.json = cols.read(cursor, item.type);
+                }
             }
+        }
+    }
 
-        /* ===============================
-           VIDEO + THUMB
-         =============================== */
-            //else if (mime.startsWith("video/")) {
-            else if (mime != null && mime.startsWith("video/")) {
+    // Nombre de médias visibles : depuis l'index quand il couvre ces exclusions (sans filtre), sinon une requête
+    private int countMedia(String type, MediaExclusionRules exclusions, MediaFilters filters) {
+        MediaIndex index = indexFor(exclusions, filters);
+        if (index != null)
+            return index.count(mediaTypeOf(type));
+
+        ArrayList<String> selectionArgs = new ArrayList<>();
+        String selection = pageSelection(type, null, exclusions, filters, selectionArgs);
+        try (Cursor cursor = cordova.getContext().getContentResolver().query(collectionFor(type),
+                new String[]{MediaStore.MediaColumns._ID}, selection, selectionArgs.toArray(new String[0]), null)) {
+            return cursor != null ? cursor.getCount() : 0;
+        }
+    }
 
-                type = "video";
+    // Albums (buckets) visibles : une requête groupée par BUCKET_ID quand le provider l'accepte
+    // (GROUP BY via les query args depuis Android 11, dans la sélection avant Android 10),
+    // sinon une lecture des seules colonnes de bucket, du plus récent au plus ancien.
+    private JSONArray getAlbums(String type, MediaExclusionRules exclusions) throws JSONException {
+        ArrayList<String> selectionArgs = new ArrayList<>();
+        String selection = pageSelection(type, null, exclusions, null, selectionArgs);
+        String[] args = selectionArgs.toArray(new String[0]);
+
+        List<JSONObject> albums = null;
+        if (Build.VERSION.SDK_INT != Build.VERSION_CODES.Q) {
+            try {
+                albums = groupedAlbums(type, selection, args);
+            } catch (Exception e) {
+                Log.w("MediaPicker", "Grouped album query refused, scanning buckets: " + e.getMessage());
+            }
+        }
+        if (albums == null)
+            albums = scannedAlbums(type, selection, args);
+
+        Collections.sort(albums, (a, b) -> Long.compare(b.optLong("newest"), a.optLong("newest")));
+        JSONArray result = new JSONArray();
+        for (JSONObject album : albums)
+            result.put(album);
+        return result;
+    }
+
+    private static final String BUCKET_ID = MediaStore.Images.ImageColumns.BUCKET_ID;
+    private static final String BUCKET_NAME = MediaStore.Images.ImageColumns.BUCKET_DISPLAY_NAME;
+
+    private List<JSONObject> groupedAlbums(String type, String selection, String[] args) throws JSONException {
+        // SQLite : avec un seul MAX(), les colonnes simples viennent de la ligne du maximum (la couverture)
+        String[] projection = albumProjection(type,
+            "MAX(" + MediaStore.MediaColumns.DATE_ADDED + ") AS newest", "COUNT(*) AS count");
+        ContentResolver resolver = cordova.getContext().getContentResolver();
+        Cursor cursor;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bundle queryArgs = new Bundle();
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, args);
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_GROUP_BY, BUCKET_ID);
+            cursor = resolver.query(collectionFor(type), projection, queryArgs, null);
+        } else {
+            // Avant Android 10, la sélection est insérée telle quelle entre parenthèses dans le WHERE
+            String grouped = (selection != null ? selection : "1") + ") GROUP BY (" + BUCKET_ID;
+            cursor = resolver.query(collectionFor(type), projection, grouped, args, null);
+        }
+        if (cursor == null)
+            throw new IllegalStateException("No cursor");
+
+        List<JSONObject> albums = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                if (cursor.isNull(0))
+                    continue;
+                albums.add(album(cursor.getString(0), cursor.getString(1), cursor.getLong(2),
+                        coverMediaType(cursor, type, 5), cursor.getLong(3), cursor.getInt(4)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return albums;
+    }
 
-                // Métadonnées vidéo
-                try (MediaMetadataRetriever retriever = new MediaMetadataRetriever()) {
+    private List<JSONObject> scannedAlbums(String type, String selection, String[] args) throws JSONException {
+        String[] projection = albumProjection(type, MediaStore.MediaColumns.DATE_ADDED);
+        Map<String, long[]> counts = new HashMap<>(); // bucket -> {count}
+        Map<String, JSONObject> byBucket = new LinkedHashMap<>();
+        try (Cursor cursor = cordova.getContext().getContentResolver().query(collectionFor(type), projection,
+                selection, args, MediaStore.MediaColumns.DATE_ADDED + " DESC, " + MediaStore.MediaColumns._ID + " DESC")) {
+            if (cursor == null)
+                return new ArrayList<>();
+            while (cursor.moveToNext()) {
+                if (cursor.isNull(0))
+                    continue;
+                String bucket = cursor.getString(0);
+                long[] count = counts.get(bucket);
+                if (count == null) {
+                    // Trié du plus récent : la première ligne d'un bucket est sa couverture
+                    counts.put(bucket, new long[]{1});
+                    byBucket.put(bucket, album(bucket, cursor.getString(1), cursor.getLong(2),
+                            coverMediaType(cursor, type, 4), cursor.getLong(3), 0));
+                } else {
+                    count[0]++;
+                }
+            }
+        }
+        List<JSONObject> albums = new ArrayList<>();
+        for (Map.Entry<String, JSONObject> entry : byBucket.entrySet()) {
+            JSONObject album = entry.getValue();
+            album.put("count", counts.get(entry.getKey())[0]);
+            albums.add(album);
+        }
+        return albums;
+    }
 
-                    retriever.setDataSource(dest.getAbsolutePath());
+    // bucket, nom, id de couverture, colonnes propres à la requête, puis MEDIA_TYPE pour "all"
+    private static String[] albumProjection(String type, String... extra) {
+        ArrayList<String> projection = new ArrayList<>(Arrays.asList(BUCKET_ID, BUCKET_NAME, MediaStore.MediaColumns._ID));
+        projection.addAll(Arrays.asList(extra));
+        if ("all".equals(type))
+            projection.add(MediaStore.Files.FileColumns.MEDIA_TYPE);
+        return projection.toArray(new String[0]);
+    }
 
-                    String w = retriever.extractMetadata(
-                            MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH);
+    // Images et Video n'ont pas de colonne MEDIA_TYPE : le type vient de la collection
+    private static int coverMediaType(Cursor cursor, String type, int column) {
+        if ("all".equals(type))
+            return cursor.getInt(column);
+        return "videos".equals(type) ? MediaIndex.VIDEO : MediaIndex.IMAGE;
+    }
+
+    private static JSONObject album(String bucketId, String name, long coverId, int coverMediaType,
+                                    long newest, int count) throws JSONException {
+        String coverType = coverMediaType == MediaIndex.VIDEO ? "videos" : "images";
+        JSONObject album = new JSONObject();
+        album.put("bucketId", bucketId);
+        album.put("name", name != null ? name : "");
+        album.put("count", count);
+        album.put("coverUri", Uri.withAppendedPath(collectionFor(coverType), String.valueOf(coverId)).toString());
+        album.put("coverType", coverMediaType == MediaIndex.VIDEO ? "video" : "image");
+        album.put("newest", newest * 1000L);
+        return album;
+    }
 
-                    String h = retriever.extractMetadata(
-                            MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT);
+    private void sendMediaChanged(MediaIndex index, long[] inserted, long[] updated, long[] deleted) {
+        CallbackContext ctx;
+        synchronized (this) {
+            // Un index remplacé ou arrêté ne parle plus à JS
+            ctx = index == mediaIndex ? mediaIndexCallback : null;
+        }
+        if (ctx == null)
+            return;
+        try {
+            JSONObject event = new JSONObject();
+            event.put("event", "mediaChanged");
+            event.put("inserted", new JSONArray(inserted));
+            event.put("updated", new JSONArray(updated));
+            event.put("deleted", new JSONArray(deleted));
+            event.put("count", index.count(0));
+            PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+            result.setKeepCallback(true);
+            ctx.sendPluginResult(result);
+        } catch (JSONException e) {
+            Log.e("MediaPicker", "Media change error: " + e.getMessage());
+        }
+    }
 
-                    String d = retriever.extractMetadata(
-                            MediaMetadataRetriever.METADATA_KEY_DURATION);
+    // Repli pour "all" quand MediaStore.Files n'est pas interrogeable : fusion au fil de l'eau des deux
+    // curseurs triés, sans LIMIT (la fenêtre du curseur se remplit à la demande). Seule la page est gardée.
+    private void mergeCollections(PageKey after, int skip, int wanted, ProcessOptions options,
+                                  List<JSONObjectWithTimestamp> out) throws JSONException {
+        String sortOrder = MediaStore.MediaColumns.DATE_ADDED + " DESC, " + MediaStore.MediaColumns._ID + " DESC";
+        ContentResolver resolver = cordova.getContext().getContentResolver();
+
+        ArrayList<String> imageArgs = new ArrayList<>();
+        ArrayList<String> videoArgs = new ArrayList<>();
+        String imageSelection = pageSelection("images", after, options.exclusions, options.filters, imageArgs);
+        String videoSelection = pageSelection("videos", after, options.exclusions, options.filters, videoArgs);
+
+        try (Cursor images = resolver.query(collectionFor("images"), pageProjection("images"),
+                     imageSelection, imageArgs.toArray(new String[0]), sortOrder);
+             Cursor videos = resolver.query(collectionFor("videos"), pageProjection("videos"),
+                     videoSelection, videoArgs.toArray(new String[0]), sortOrder)) {
+
+            RowReader imageReader = images != null ? new RowReader(images, "images", options) : null;
+            RowReader videoReader = videos != null ? new RowReader(videos, "videos", options) : null;
+            JSONObjectWithTimestamp a = imageReader != null ? imageReader.next(Integer.MAX_VALUE) : null;
+            JSONObjectWithTimestamp b = videoReader != null ? videoReader.next(Integer.MAX_VALUE) : null;
+            int taken = 0;
+
+            while (taken < wanted && (a != null || b != null)) {
+                JSONObjectWithTimestamp pick;
+                if (b == null || (a != null && NEWEST_FIRST.compare(a, b) <= 0)) {
+                    pick = a;
+                    a = imageReader.next(Integer.MAX_VALUE);
+                } else {
+                    pick = b;
+                    b = videoReader.next(Integer.MAX_VALUE);
+                }
 
-                    if (w != null) obj.put("width", Integer.parseInt(w));
-                    if (h != null) obj.put("height", Integer.parseInt(h));
-                    if (d != null) obj.put("duration", Long.parseLong(d) / 1000.0);
+                if (skip > 0) {
+                    skip--;
+                    continue;
                 }
+                out.add(pick);
+                taken++;
+            }
+        }
+    }
 
-                // ======================
-                // THUMBNAIL VIDEO
-                // ======================
+    private static Uri collectionFor(String type) {
+        switch (type) {
+            case "images":
+                return MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+            case "videos":
+                return MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
+            default:
+                return MediaStore.Files.getContentUri("external");
+        }
+    }
+
+    // Colonnes de tri et de métadonnées pour le mode metadataOnly (pas d'I/O fichier).
+    // Le filtrage des dossiers se fait dans la sélection : DATA n'est plus lu.
+    private static String[] pageProjection(String type) {
+        ArrayList<String> projection = new ArrayList<>();
+        projection.add(MediaStore.MediaColumns._ID);
+        projection.add(MediaStore.MediaColumns.DATE_ADDED);
+        projection.add(MediaStore.MediaColumns.DISPLAY_NAME);
+        projection.add(MediaStore.MediaColumns.SIZE);
+        projection.add(MediaStore.MediaColumns.DATE_MODIFIED);
+        projection.add(MediaStore.MediaColumns.MIME_TYPE);
+        projection.add(MediaStore.MediaColumns.WIDTH);
+        projection.add(MediaStore.MediaColumns.HEIGHT);
+        if (!"videos".equals(type))
+            projection.add(MediaStore.Images.ImageColumns.ORIENTATION);
+        if (!"images".equals(type))
+            projection.add(MediaStore.Video.VideoColumns.DURATION);
+        if ("all".equals(type))
+            projection.add(MediaStore.Files.FileColumns.MEDIA_TYPE);
+        return projection.toArray(new String[0]);
+    }
+
+    // Filtre de base : ignorer ce qui est en attente ou exclu (dossiers cachés, coffres...),
+    // ne garder qu'images et vidéos dans Files, et reprendre après la clé de pagination
+    private static String pageSelection(String type, PageKey key, MediaExclusionRules exclusions,
+                                        MediaFilters filters, List<String> selectionArgs) {
+        StringBuilder selection = new StringBuilder();
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.Q) {
+            selection.append(MediaStore.MediaColumns.IS_PENDING).append(" = 0");
+        }
+        exclusions.appendTo(selection, selectionArgs);
+        if (filters != null)
+            filters.appendTo(selection, selectionArgs);
+        if ("all".equals(type)) {
+            if (selection.length() > 0) selection.append(" AND ");
+            selection.append(MediaStore.Files.FileColumns.MEDIA_TYPE).append(" IN (")
+                .append(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE).append(", ")
+                .append(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO).append(")");
+        }
+        if (key != null) {
+            if (selection.length() > 0) selection.append(" AND ");
+            key.appendSelection(selection, selectionArgs);
+        }
+        return selection.length() > 0 ? selection.toString() : null;
+    }
 
-                File thumbFile = new File(
-                        cordova.getContext().getCacheDir(),
-                        "thumb_" + baseName + ".jpg"
-                );
+    // Lit les lignes d'un curseur de page
+    private static class RowReader {
+        final Cursor cursor;
+        final String type;
+        final ProcessOptions options;
+        final int idCol, dateAddedCol, mediaTypeCol;
+        final RowColumns cols;
+        int rows; // lignes lues
+
+        RowReader(Cursor cursor, String type, ProcessOptions options) {
+            this.cursor = cursor;
+            this.type = type;
+            this.options = options;
+            idCol = cursor.getColumnIndex(MediaStore.MediaColumns._ID);
+            dateAddedCol = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_ADDED);
+            mediaTypeCol = cursor.getColumnIndex(MediaStore.Files.FileColumns.MEDIA_TYPE);
+            cols = new RowColumns(cursor);
+        }
 
-                if (!thumbFile.exists()) {
+        // Prochaine ligne, ou null en fin de curseur ou après maxRows lignes lues
+        JSONObjectWithTimestamp next(int maxRows) throws JSONException {
+            if (rows < maxRows && cursor.moveToNext()) {
+                rows++;
+                long id = cursor.getLong(idCol);
+                long dateAdded = cursor.getLong(dateAddedCol);
+
+                String rowType = type;
+                if (mediaTypeCol != -1) {
+                    rowType = cursor.getInt(mediaTypeCol) == MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO
+                        ? "videos" : "images";
+                }
 
-                    Bitmap thumb = null;
+                // URI de la collection propre au type, même pour une ligne lue via Files
+                Uri mediaUri = Uri.withAppendedPath(collectionFor(rowType), String.valueOf(id));
+                JSONObject row = options.metadataOnly ? cols.read(cursor, rowType) : new JSONObject();
+                return new JSONObjectWithTimestamp(row, dateAdded * 1000L, id, mediaUri, rowType);
+            }
+            return null;
+        }
+    }
 
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+    // LIMIT/OFFSET poussés dans la requête MediaStore : une page ne lit que ses propres lignes
+    private Cursor queryPaged(Uri collection, String[] projection, String selection, String[] selectionArgs,
+                              String sortOrder, int limit, int offset) {
+        ContentResolver resolver = cordova.getContext().getContentResolver();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bundle queryArgs = new Bundle();
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, sortOrder);
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_LIMIT, limit + " OFFSET " + offset);
+            return resolver.query(collection, projection, queryArgs, null);
+        }
 
-                        try {
-                            Size size = new Size(128, 128);
+        // Avant Android 11, MediaProvider accepte LIMIT/OFFSET à la suite du tri
+        return resolver.query(collection, projection, selection, selectionArgs,
+                sortOrder + " LIMIT " + limit + " OFFSET " + offset);
+    }
 
-                            thumb = cordova.getContext()
-                                    .getContentResolver()
-                                    .loadThumbnail(uri, size, null);
+    // Clé de pagination opaque : (DATE_ADDED, _ID) du dernier élément renvoyé
+    private static class PageKey {
+        final long dateAdded; // secondes, comme la colonne
+        final long id;
 
-                        } catch (Exception e) {
+        PageKey(long dateAdded, long id) {
+            this.dateAdded = dateAdded;
+            this.id = id;
+        }
 
-                            // fallback
-                            thumb = ThumbnailUtils.createVideoThumbnail(
-                                    dest,
-                                    new Size(128, 128),
-                                    null
-                            );
-                        }
+        PageKey(JSONObjectWithTimestamp item) {
+            this(item.timestamp / 1000L, item.id);
+        }
 
-                    } else {
+        void appendSelection(StringBuilder selection, List<String> args) {
+            selection.append("(").append(MediaStore.MediaColumns.DATE_ADDED).append(" < ? OR (")
+                .append(MediaStore.MediaColumns.DATE_ADDED).append(" = ? AND ")
+                .append(MediaStore.MediaColumns._ID).append(" < ?))");
+            args.add(String.valueOf(dateAdded));
+            args.add(String.valueOf(dateAdded));
+            args.add(String.valueOf(id));
+        }
 
-                        thumb = ThumbnailUtils.createVideoThumbnail(
-                                dest.getAbsolutePath(),
-                                MediaStore.Video.Thumbnails.MINI_KIND
-                        );
-                    }
+        String encode() {
+            String raw = dateAdded + ":" + id;
+            return Base64.encodeToString(raw.getBytes(StandardCharsets.UTF_8),
+                Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+        }
 
-                    if (thumb != null) {
+        static PageKey decode(String token) {
+            if (token == null || token.isEmpty() || "null".equals(token)) return null;
+            try {
+                String raw = new String(Base64.decode(token, Base64.URL_SAFE), StandardCharsets.UTF_8);
+                int sep = raw.indexOf(':');
+                return new PageKey(Long.parseLong(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid pageToken");
+            }
+        }
+    }
 
-                        try (FileOutputStream fos =
-                                     new FileOutputStream(thumbFile)) {
+    private static class MediaPage {
+        final JSONArray items;
+        final String nextPageToken;
+        final JSONArray failures; // partialSuccess only
 
-                            thumb.compress(
-                                    Bitmap.CompressFormat.JPEG,
-                                    80,
-                                    fos
-                            );
-                            fos.flush();
+        MediaPage(JSONArray items, String nextPageToken, JSONArray failures) {
+            this.items = items;
+            this.nextPageToken = nextPageToken;
+            this.failures = failures;
+        }
+    }
+
+    // Internal wrapper to store timestamp without exposing it
+    private static class JSONObjectWithTimestamp {
+        JSONObject json;
+        long timestamp;
+        long id;
+        Uri uri;
+        String type;
+
+        JSONObjectWithTimestamp(JSONObject json, long timestamp, long id, Uri uri, String type) {
+            this.json = json;
+            this.timestamp = timestamp;
+            this.id = id;
+            this.uri = uri;
+            this.type = type;
+        }
+    }
+
+    // Column indexes of the metadata read from a MediaStore row (-1 when absent from the projection)
+    private static class RowColumns {
+        final int name, size, modified, mime, width, height, orientation, duration;
+
+        RowColumns(Cursor cursor) {
+            name = cursor.getColumnIndex(MediaStore.MediaColumns.DISPLAY_NAME);
+            size = cursor.getColumnIndex(MediaStore.MediaColumns.SIZE);
+            modified = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+            mime = cursor.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE);
+            width = cursor.getColumnIndex(MediaStore.MediaColumns.WIDTH);
+            height = cursor.getColumnIndex(MediaStore.MediaColumns.HEIGHT);
+            orientation = cursor.getColumnIndex(MediaStore.Images.ImageColumns.ORIENTATION);
+            duration = cursor.getColumnIndex(MediaStore.Video.VideoColumns.DURATION);
+        }
+
+        JSONObject read(Cursor cursor, String type) throws JSONException {
+            JSONObject row = new JSONObject();
+            if (name != -1) row.put("fileName", cursor.getString(name));
+            if (size != -1) row.put("fileSize", cursor.getLong(size));
+            if (modified != -1) row.put("dateModified", cursor.getLong(modified) * 1000L);
+            if (mime != -1) row.put("mimeType", cursor.getString(mime));
+            if (width != -1 && cursor.getInt(width) > 0) row.put("width", cursor.getInt(width));
+            if (height != -1 && cursor.getInt(height) > 0) row.put("height", cursor.getInt(height));
+            if (orientation != -1 && "images".equals(type)) row.put("orientation", cursor.getInt(orientation));
+            if (duration != -1 && "videos".equals(type) && !cursor.isNull(duration)) row.put("duration", cursor.getLong(duration) / 1000.0);
+            return row;
+        }
+    }
+
+    private JSONObject metadataOnlyResult(JSONObjectWithTimestamp item, int index) throws JSONException {
+        JSONObject obj = item.json;
+        String id = item.uri.toString();
+        String name = obj.optString("fileName", "");
+        int dot = name.lastIndexOf('.');
+        String ext = dot > 0 ? name.substring(dot + 1) : "dat";
+
+        // materialize(id) peut ensuite copier le fichier à la demande
+        sources.put(id, new SourceRecord(item.uri,
+            MediaCacheIndex.keyFor(item.uri, obj.optLong("fileSize"), obj.optLong("dateModified") / 1000L), ext));
+
+        obj.put("id", id);
+        obj.put("index", index);
+        obj.put("uri", item.uri.toString());
+        obj.put("contentUri", item.uri.toString());
+        obj.put("copied", false);
+        obj.put("type", "images".equals(item.type) ? "image" : "video");
+        obj.put("dateAdded", item.timestamp);
+        return obj;
+    }
+
+    // One plugin call: its callback, arguments and options, never shared with another call
+    private static class MediaRequest {
+        final int id;
+        final CallbackContext callback;
+        final JSONArray args;
+        ProcessOptions options = new ProcessOptions();
+        int selectionLimit = 3;
+        boolean showLoader = true;
+        String mediaType = "all"; // images | videos | all
+
+        final MediaJob job;
+
+        MediaRequest(int id, CallbackContext callback, JSONArray args) {
+            this.id = id;
+            this.callback = callback;
+            this.args = args;
+            JSONObject opts = opts();
+            String jobId = opts != null ? opts.optString("jobId", "") : "";
+            this.job = new MediaJob(jobId.isEmpty() ? "request-" + id : jobId);
+        }
+
+        JSONObject opts() {
+            return args != null && args.length() > 0 ? args.optJSONObject(0) : null;
+        }
+    }
+
+    // Cancellation handle of one call, looked up by cancel(jobId)
+    private static class MediaJob {
+        final String id;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final Set<Future<?>> running = ConcurrentHashMap.newKeySet();
+        volatile long cacheBatch = -1; // lot MediaCacheIndex ouvert par processInParallel
+
+        MediaJob(String id) {
+            this.id = id;
+        }
+
+        boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        void track(Future<?> future) {
+            running.add(future);
+            if (cancelled.get()) future.cancel(true);
+        }
+
+        void untrack(Future<?> future) {
+            running.remove(future);
+        }
+
+        // Interrompt les copies (FileChannel), ré-encodages et attentes en cours ; les fichiers .part
+        // sont supprimés par le code qui les écrivait
+        boolean cancel() {
+            if (cancelled.getAndSet(true)) return false;
+            for (Future<?> future : running) future.cancel(true);
+            return true;
+        }
+
+        void checkCancelled() {
+            if (cancelled.get() || Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Job " + id + " cancelled");
+            }
+        }
+    }
+
+    private static final int MAX_PREFETCH = 200;
+
+    // Per-call options of the item pipeline (copy, probe, thumbnail), shared by getMedias and getLastMedias
+    private static class ProcessOptions {
+        int concurrency = MAX_WORKERS;
+        boolean stream = false;     // emit each item as soon as it is ready
+        String copyMode = COPY_EAGER; // eager | lazy | none
+        boolean progress = false;   // emit copy progress events
+        int copyBufferSize = MediaCopyEngine.DEFAULT_BUFFER_SIZE;
+        long cacheMaxBytes = 0;       // 0 : keep the current cache budget
+        boolean metadataOnly = false; // getLastMedias: MediaStore columns only, no file I/O
+        MediaExclusionRules exclusions = MediaExclusionRules.defaults();
+        MediaFilters filters = new MediaFilters(); // getLastMedias: bucketId, dates, MIME types, sizes
+        boolean convertHeic = true;   // HEIC/HEIF -> JPEG when a file is produced
+        ImageTranscoder.Settings heicSettings = new ImageTranscoder.Settings();
+        ImageTranscoder.Settings resize;   // null : images returned at their original size
+        VideoTranscoder.Settings transcode; // null : videos returned as is
+        long maxInFlightBytes;             // 0 : no byte budget, only the concurrency limit
+        boolean partialSuccess = false;    // {items, failures} instead of rejecting the whole batch
+        int prefetch = 0;                  // getLastMedias: items after the page warmed up in the background
+        String dedup;                      // null : off ; "sampled" | "sha256" content hash
+        MediaJob job = new MediaJob("local");
+        ThumbnailGenerator.Spec thumbnails = new ThumbnailGenerator.Spec();
+        boolean imageThumbnails = false; // videos only, unless thumbnailSizes is given
+        boolean videoDetails = false;    // probe every video for bitrate/frame rate, even when MediaStore is complete
+
+        static ProcessOptions from(JSONObject opts) {
+            ProcessOptions o = new ProcessOptions();
+            if (opts == null) return o;
+            o.concurrency = clampConcurrency(opts.optInt("concurrency", MAX_WORKERS));
+            o.stream = opts.optBoolean("stream", false);
+            String mode = opts.optString("copyMode", COPY_EAGER);
+            if (COPY_NONE.equals(mode) || COPY_LAZY.equals(mode)) o.copyMode = mode;
+            o.progress = opts.optBoolean("progress", false);
+            o.copyBufferSize = MediaCopyEngine.clampBufferSize(
+                opts.optInt("copyBufferSize", MediaCopyEngine.DEFAULT_BUFFER_SIZE));
+            o.cacheMaxBytes = opts.optLong("cacheMaxBytes", 0);
+            o.metadataOnly = opts.optBoolean("metadataOnly", false) || !opts.optBoolean("includeFile", true);
+            o.exclusions = MediaExclusionRules.from(opts.optJSONObject("exclude"));
+            o.filters = MediaFilters.from(opts);
+            o.convertHeic = opts.optBoolean("convertHeic", true);
+            o.heicSettings.maxWidth = Math.max(0, opts.optInt("maxWidth", 0));
+            o.heicSettings.maxHeight = Math.max(0, opts.optInt("maxHeight", 0));
+            o.heicSettings.quality = Math.max(1, Math.min(100, opts.optInt("heicQuality", 95)));
+
+            o.maxInFlightBytes = Math.max(0, opts.optLong("maxInFlightBytes", 0));
+            o.partialSuccess = opts.optBoolean("partialSuccess", false);
+            o.prefetch = Math.max(0, Math.min(opts.optInt("prefetch", 0), MAX_PREFETCH));
+            Object dedup = opts.opt("dedup");
+            if (Boolean.TRUE.equals(dedup) || MediaHasher.SAMPLED.equals(dedup)) {
+                o.dedup = MediaHasher.SAMPLED;
+            } else if (MediaHasher.SHA256.equals(dedup)) {
+                o.dedup = MediaHasher.SHA256;
+            }
+
+            JSONObject transcode = opts.optJSONObject("transcode");
+            if (transcode != null) {
+                o.transcode = new VideoTranscoder.Settings();
+                o.transcode.maxHeight = Math.max(0, transcode.optInt("maxHeight", 720));
+                o.transcode.bitrate = Math.max(0, transcode.optInt("bitrate", 0));
+                o.transcode.codec = "hevc".equalsIgnoreCase(transcode.optString("codec", "avc")) ? "hevc" : "avc";
+            }
+
+            JSONObject resize = opts.optJSONObject("resize");
+            if (resize != null) {
+                o.resize = new ImageTranscoder.Settings();
+                o.resize.maxWidth = Math.max(0, resize.optInt("maxWidth", 0));
+                o.resize.maxHeight = Math.max(0, resize.optInt("maxHeight", 0));
+                o.resize.quality = Math.max(1, Math.min(100, resize.optInt("quality", 85)));
+                o.resize.format = ImageTranscoder.formatFor(resize.optString("format", "jpeg"));
+            }
+
+            JSONArray sizes = opts.optJSONArray("thumbnailSizes");
+            if (sizes != null && sizes.length() > 0) {
+                List<Integer> valid = new ArrayList<>();
+                for (int i = 0; i < sizes.length(); i++) {
+                    int size = sizes.optInt(i, 0);
+                    if (size > 0 && !valid.contains(size)) valid.add(size);
+                }
+                if (!valid.isEmpty()) {
+                    o.thumbnails.sizes = new int[valid.size()];
+                    for (int i = 0; i < valid.size(); i++) o.thumbnails.sizes[i] = valid.get(i);
+                    o.imageThumbnails = true;
+                }
+            }
+            o.thumbnails.format = ImageTranscoder.formatFor(opts.optString("thumbnailFormat", "jpeg"));
+            o.thumbnails.quality = Math.max(1, Math.min(100, opts.optInt("thumbnailQuality", 80)));
+            o.videoDetails = opts.optBoolean("videoDetails", false);
+            return o;
+        }
+
+        boolean sendsEvents() {
+            return stream || progress;
+        }
+    }
+
+    private JSONObject copyUriToCache(MediaInfo info, int index, ProcessOptions options, ItemErrors errors,
+                                      ItemListener listener) {
+        Uri uri = info.uri;
+        try {
+            options.job.checkCancelled();
+
+            // Tout ce qui vient du provider a été lu en une seule requête projetée (MediaInfoResolver)
+            String fileName = info.displayName;
+            long fileSize = info.size;
+            long dateModified = info.dateModified;
+            String mime = null;
+
+            String ext = info.extension();
+            if (ext == null || ext.isEmpty()) ext = "dat";
+
+            String id = uri.toString();
+
+            // ✅ Nom stable basé sur l'identité du média (id provider + taille + date de modification) :
+            // le même média choisi à une autre position ou page réutilise la même copie
+            MediaCacheIndex cache = getCacheIndex();
+            String baseName = MediaCacheIndex.keyFor(uri, fileSize, dateModified);
+
+            // Mémorisé pour materialize(id), quel que soit le mode de copie ; complété par le fichier
+            // renvoyé une fois l'élément traité
+            final String sourceExt = ext;
+            sources.put(id, new SourceRecord(uri, baseName, sourceExt));
+
+            File dest = cache.lookup(baseName);
+            boolean cached = dest != null;
+
+            // Zero-copy : les métadonnées sont lues directement depuis le content URI.
+            // En mode "lazy", on retombe sur une copie si le provider ne fournit pas de descripteur.
+            boolean copy = COPY_EAGER.equals(options.copyMode);
+            if (!copy && !cached && !canOpenFileDescriptor(uri)) {
+                copy = COPY_LAZY.equals(options.copyMode);
+            }
+
+            mime = resolveMime(info, ext);
+
+            // MIME inconnu : le conteneur est sondé une seule fois, la sonde resservira à la branche vidéo
+            VideoProbe probe = null;
+            if (mime == null) {
+                probe = probeVideo(uri, baseName, options);
+                mime = probe != null && probe.mimeType != null ? probe.mimeType : "application/octet-stream";
+            }
+
+            boolean isHeic = false;
+            if (mime != null) {
+                isHeic = mime.toLowerCase().contains("heic")
+                        || mime.toLowerCase().contains("heif");
+            }
+
+            if (!isHeic && ext != null) {
+                isHeic = ext.equalsIgnoreCase("heic")
+                        || ext.equalsIgnoreCase("heif");
+            }
+
+            // ==============================
+            // RESIZE / HEIC → JPEG CONVERSION
+            // ==============================
+            // Décodage direct depuis le content URI à la taille cible : la copie pleine résolution
+            // n'est jamais écrite. resize produit toujours un fichier ; la conversion HEIC seulement
+            // quand une copie est demandée (sinon, ou avec convertHeic: false, le HEIC est renvoyé tel quel).
+            int outWidth = 0;
+            int outHeight = 0;
+            boolean converted = false;
+
+            ImageTranscoder.Settings settings = null;
+            if (options.resize != null && mime.startsWith("image/") && !mime.equals("image/gif")) {
+                settings = options.resize;
+            } else if (isHeic && (copy || cached) && options.convertHeic) {
+                settings = options.heicSettings;
+            }
+
+            if (settings != null) {
+                String variantKey = baseName + "_" + settings.signature();
+                try {
+                    File output;
+                    synchronized (cache.lockFor(variantKey)) {
+                        output = cache.lookup(variantKey);
+                        if (output == null) {
+                            output = cache.fileFor(variantKey + "." + settings.extension());
+                            ImageTranscoder.Result r = getImageTranscoder().transcode(uri, output, settings);
+                            outWidth = r.width;
+                            outHeight = r.height;
+                            cache.put(variantKey, output);
                         }
+                    }
+
+                    dest = output;
+                    ext = settings.extension();
+                    mime = settings.mimeType();
+                    fileName = output.getName();
+                    fileSize = output.length();
+                    converted = true;
+                } catch (Exception e) {
+                    errors.add("Item " + index + " transcode error: " + e.getMessage());
+                }
+            }
 
-                        thumb.recycle();
+            // ==============================
+            // VIDEO TRANSCODE
+            // ==============================
+            // Ré-encodage depuis le content URI : la copie originale n'est pas écrite.
+            // Annulé avec l'appel, par cancel(jobId) ou cancelTranscode().
+            if (!converted && options.transcode != null && mime.startsWith("video/")) {
+                VideoTranscoder.Settings video = options.transcode;
+                String variantKey = baseName + "_" + video.signature();
+                AtomicBoolean cancelled = new AtomicBoolean();
+                activeTranscodes.put(cancelled, options.job);
+                try {
+                    File output;
+                    synchronized (cache.lockFor(variantKey)) {
+                        output = cache.lookup(variantKey);
+                        if (output == null) {
+                            output = cache.fileFor(variantKey + ".mp4");
+                            getVideoTranscoder().transcode(uri, output, video, cancelled, listener == null ? null
+                                    : fraction -> listener.onTranscodeProgress(index, fraction));
+                            cache.put(variantKey, output);
+                        }
                     }
+
+                    dest = output;
+                    ext = "mp4";
+                    mime = "video/mp4";
+                    fileName = output.getName();
+                    fileSize = output.length();
+                    converted = true;
+                } catch (CancellationException e) {
+                    errors.fail(ItemErrors.CANCELLED, "Item " + index + " transcode cancelled");
+                    return null;
+                } catch (Exception e) {
+                    errors.add("Item " + index + " transcode error: " + e.getMessage());
+                } finally {
+                    activeTranscodes.remove(cancelled);
                 }
+            }
 
-                if (thumbFile.exists()) {
-                    obj.put("thumbnail", "file://" + thumbFile.getAbsolutePath());
+            // ✅ Copier uniquement si pas déjà présent
+            options.job.checkCancelled();
+            String contentHash = null;
+            if (!converted && options.dedup != null) {
+                Deduplicated same = deduplicate(uri, baseName, ext, dest, copy, index, fileSize, options, listener);
+                dest = same.file;
+                contentHash = same.hash;
+            } else if (!converted && !cached && copy) {
+                synchronized (cache.lockFor(baseName)) {
+                    dest = cache.lookup(baseName);
+                    if (dest == null) {
+                        dest = cache.fileFor(baseName + "." + ext);
+                        final long expected = fileSize;
+                        getCopyEngine().copy(uri, dest, options.copyBufferSize, listener == null ? null
+                                : (copied, total) -> listener.onProgress(index, copied, total > 0 ? total : expected));
+                        cache.put(baseName, dest);
+                    }
+                }
+            }
+
+            if (dest != null) {
+                if (fileName == null) fileName = dest.getName();
+                if (fileSize == 0) fileSize = dest.length();
+            }
+
+            JSONObject obj = new JSONObject();
+
+            String type = "other";
+
+        /* ===============================
+           IMAGE
+         =============================== */
+            if (mime != null && mime.startsWith("image/")){
+
+                type = "image";
+
+                BitmapFactory.Options bounds = new BitmapFactory.Options();
+                bounds.inJustDecodeBounds = true;
+
+                if (outWidth > 0 && outHeight > 0) {
+                    bounds.outWidth = outWidth;
+                    bounds.outHeight = outHeight;
+                } else if (info.width > 0 && info.height > 0 && !converted) {
+                    bounds.outWidth = info.width;
+                    bounds.outHeight = info.height;
+                } else if (dest != null) {
+                    BitmapFactory.decodeFile(dest.getAbsolutePath(), bounds);
+                } else {
+                    try (ParcelFileDescriptor pfd = openFileDescriptor(uri)) {
+                        if (pfd != null)
+                            BitmapFactory.decodeFileDescriptor(pfd.getFileDescriptor(), null, bounds);
+                    } catch (Exception ignored) {}
+                }
+
+                if (bounds.outWidth > 0) {
+                    obj.put("width", bounds.outWidth);
+                    obj.put("height", bounds.outHeight);
+                }
+            }
+
+        /* ===============================
+           VIDEO + THUMB
+         =============================== */
+            //else if (mime.startsWith("video/")) {
+            else if (mime != null && mime.startsWith("video/")) {
+
+                type = "video";
+
+                // Métadonnées vidéo : colonnes MediaStore si complètes, sinon une seule sonde du conteneur
+                // (descripteur d'origine) qui fournit aussi l'image de la miniature quand il en faut une
+                // Vidéo ré-encodée : les métadonnées sont celles du fichier produit
+                boolean complete = !converted && info.width > 0 && info.height > 0 && info.durationMs >= 0;
+                if (converted) {
+                    if (probe != null && probe.frame != null) probe.frame.recycle();
+                    probe = VideoProbe.probe(cordova.getContext().getContentResolver(), Uri.fromFile(dest),
+                            needsVideoFrame(baseName, options) ? getThumbnailGenerator().largestSize(options.thumbnails) : 0);
+                } else if (probe == null && (!complete || options.videoDetails || needsVideoFrame(baseName, options))) {
+                    probe = probeVideo(uri, baseName, options);
+                }
+
+                if (complete) {
+                    obj.put("width", info.width);
+                    obj.put("height", info.height);
+                    obj.put("duration", info.durationMs / 1000.0);
+                } else if (probe != null) {
+                    if (probe.width > 0) obj.put("width", probe.width);
+                    if (probe.height > 0) obj.put("height", probe.height);
+                    if (probe.durationMs >= 0) obj.put("duration", probe.durationMs / 1000.0);
+                }
+
+                int rotation = probe != null && probe.rotation >= 0 ? probe.rotation : info.orientation;
+                if (rotation >= 0) obj.put("rotation", rotation);
+                if (probe != null) {
+                    if (probe.bitrate > 0) obj.put("bitrate", probe.bitrate);
+                    if (probe.frameRate > 0) obj.put("frameRate", probe.frameRate);
+                }
+            }
+
+            Bitmap frame = probe != null ? probe.frame : null;
+            if (frame != null && !"video".equals(type)) {
+                frame.recycle();
+                frame = null;
+            }
+
+        /* ===============================
+           THUMBNAILS
+         =============================== */
+            // Toujours depuis le content URI d'origine ; les images n'en ont que si thumbnailSizes est fourni
+            if ("video".equals(type) || ("image".equals(type) && options.imageThumbnails)) {
+                Map<Integer, File> thumbs = getThumbnailGenerator()
+                        .generate(uri, "video".equals(type), baseName, options.thumbnails, cache, frame);
+
+                if (!thumbs.isEmpty()) {
+                    JSONObject sizes = new JSONObject();
+                    String smallest = null;
+                    for (Map.Entry<Integer, File> entry : thumbs.entrySet()) {
+                        String path = "file://" + entry.getValue().getAbsolutePath();
+                        if (smallest == null) smallest = path;
+                        sizes.put(String.valueOf(entry.getKey()), path);
+                    }
+                    obj.put("thumbnail", smallest);
+                    obj.put("thumbnails", sizes);
                 }
             }
 
@@ -623,30 +2262,308 @@ public class MediaPicker extends CordovaPlugin {
            RESULT
          =============================== */
 
+            if (fileName == null) fileName = baseName + "." + ext;
+
             obj.put("id", id);
             obj.put("index", index);
-            obj.put("uri", "file://" + dest.getAbsolutePath());
+            obj.put("uri", dest != null ? "file://" + dest.getAbsolutePath() : uri.toString());
+            obj.put("contentUri", uri.toString());
+            obj.put("copied", dest != null);
             obj.put("fileName", fileName);
             obj.put("fileSize", fileSize);
             obj.put("mimeType", mime);
             obj.put("type", type);
+            if (contentHash != null)
+                obj.put("contentHash", contentHash);
+
+            // readChunk / getChunkPlan lisent par défaut ce fichier-ci (sortie resize / HEIC / transcode)
+            sources.put(id, new SourceRecord(uri, baseName, sourceExt, dest, converted));
 
             return obj;
 
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
 
-            errors.add("Item " + index + " copy error: " + e.getMessage());
+            errors.fail(ItemErrors.codeFor(e), "Item " + index + " copy error: " + e.getMessage());
             return null;
         }
     }
 
-    private String resolveMime(Uri uri, File dest, String ext) {
+    private static class Deduplicated {
+        final File file;   // copie de l'élément, ou d'un contenu identique déjà en cache ; null sans copie
+        final String hash;
+
+        Deduplicated(File file, String hash) {
+            this.file = file;
+            this.hash = hash;
+        }
+    }
 
-        if (uri != null) {
-            String mime = cordova.getContext().getContentResolver().getType(uri);
-            if (mime != null) return mime;
+    // dedup : empreinte du contenu et, quand une copie est voulue, réutilisation d'un fichier du cache
+    // de même empreinte (même photo partagée par deux albums ou deux apps, re-téléchargement...).
+    // "sampled" est calculé avant la copie, qui est évitée pour un doublon ; "sha256" est calculé
+    // pendant la copie, et la copie en double est supprimée aussitôt. Verrous : empreinte puis clé.
+    private Deduplicated deduplicate(Uri uri, String baseName, String ext, File cached, boolean copy, int index,
+                                     long expected, ProcessOptions options, ItemListener listener) throws IOException {
+        MediaCacheIndex cache = getCacheIndex();
+        MediaHasher hasher = getHasher();
+
+        if (cached != null) {
+            String hash = cache.hashOf(baseName);
+            if (hash == null || !hash.startsWith(options.dedup + ":")) {
+                hash = hashOf(Uri.fromFile(cached), options.dedup);
+                cache.setHash(baseName, hash);
+            }
+            return new Deduplicated(cached, hash);
+        }
+        if (!copy) {
+            return new Deduplicated(null, hashOf(uri, options.dedup));
         }
 
+        MediaCopyEngine.ProgressListener progress = listener == null ? null
+                : (copied, total) -> listener.onProgress(index, copied, total > 0 ? total : expected);
+
+        String sampled = MediaHasher.SAMPLED.equals(options.dedup) ? hasher.sampled(uri) : null;
+        if (sampled != null) {
+            synchronized (cache.hashLockFor(sampled)) {
+                File same = cache.lookupByHash(sampled);
+                if (same != null) return new Deduplicated(same, sampled);
+                File dest;
+                synchronized (cache.lockFor(baseName)) {
+                    dest = cache.lookup(baseName);
+                    if (dest == null) {
+                        dest = cache.fileFor(baseName + "." + ext);
+                        getCopyEngine().copy(uri, dest, options.copyBufferSize, progress);
+                        cache.put(baseName, dest);
+                    }
+                    cache.setHash(baseName, sampled);
+                }
+                return new Deduplicated(dest, sampled);
+            }
+        }
+
+        // sha256, ou source non seekable : l'empreinte complète est calculée pendant la copie
+        File dest;
+        String hash;
+        synchronized (cache.lockFor(baseName)) {
+            dest = cache.lookup(baseName);
+            if (dest == null) {
+                MessageDigest digest = MediaHasher.newDigest();
+                dest = cache.fileFor(baseName + "." + ext);
+                getCopyEngine().copy(uri, dest, options.copyBufferSize, progress, digest);
+                cache.put(baseName, dest);
+                hash = MediaHasher.format(MediaHasher.SHA256, digest);
+            } else {
+                hash = hasher.sha256(Uri.fromFile(dest));
+            }
+        }
+        synchronized (cache.hashLockFor(hash)) {
+            File same = cache.lookupByHash(hash);
+            if (same != null && !same.equals(dest)) {
+                synchronized (cache.lockFor(baseName)) {
+                    cache.remove(baseName);
+                }
+                return new Deduplicated(same, hash);
+            }
+            cache.setHash(baseName, hash);
+        }
+        return new Deduplicated(dest, hash);
+    }
+
+    private String hashOf(Uri uri, String algorithm) throws IOException {
+        String hash = MediaHasher.SAMPLED.equals(algorithm) ? getHasher().sampled(uri) : null;
+        return hash != null ? hash : getHasher().sha256(uri);
+    }
+
+    // Erreurs d'un élément du lot : les messages (rejet global historique) et, si l'élément n'a pas
+    // de résultat, le code de l'échec renvoyé dans failures
+    private static class ItemErrors {
+        static final String PERMISSION_DENIED = "PERMISSION_DENIED";
+        static final String NOT_FOUND = "NOT_FOUND";
+        static final String IO_ERROR = "IO_ERROR";
+        static final String CANCELLED = "CANCELLED";
+        static final String REJECTED = "REJECTED";
+        static final String UNKNOWN = "UNKNOWN";
+
+        final List<String> messages = new ArrayList<>();
+        String code = UNKNOWN;
+
+        // Erreur non bloquante : l'élément est quand même renvoyé
+        void add(String message) {
+            messages.add(message);
+        }
+
+        void fail(String code, String message) {
+            this.code = code;
+            messages.add(message);
+        }
+
+        static String codeFor(Exception e) {
+            if (e instanceof SecurityException) return PERMISSION_DENIED;
+            if (e instanceof FileNotFoundException) return NOT_FOUND;
+            if (e instanceof IOException) return IO_ERROR;
+            return UNKNOWN;
+        }
+
+        JSONObject toFailure(int index, Uri uri) {
+            JSONObject failure = new JSONObject();
+            try {
+                failure.put("index", index);
+                failure.put("uri", uri.toString());
+                failure.put("code", code);
+                failure.put("message", messages.isEmpty() ? code : messages.get(messages.size() - 1));
+            } catch (JSONException ignored) {}
+            return failure;
+        }
+    }
+
+    // Source d'un média déjà renvoyé à JS, pour materialize(id)
+    private static class SourceRecord {
+        final Uri uri;
+        final String baseName;
+        final String ext;
+        final File output;      // fichier renvoyé à JS, null sans copie ou pour une source reconstruite
+        final boolean processed; // output est une sortie resize / HEIC / transcode, pas l'original
+
+        SourceRecord(Uri uri, String baseName, String ext) {
+            this(uri, baseName, ext, null, false);
+        }
+
+        SourceRecord(Uri uri, String baseName, String ext, File output, boolean processed) {
+            this.uri = uri;
+            this.baseName = baseName;
+            this.ext = ext;
+            this.output = output;
+            this.processed = processed;
+        }
+    }
+
+    // L'id est le content URI : hors de la mémoire récente, la source est relue dans MediaStore
+    private SourceRecord sourceFor(String id) {
+        SourceRecord source = sources.get(id);
+        if (source != null) return source;
+
+        Uri uri = Uri.parse(id);
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            throw new IllegalArgumentException("Unknown media id: " + id);
+        }
+        MediaInfo info = getInfoResolver().resolve(uri);
+        if (info.displayName == null && info.size <= 0) {
+            throw new IllegalArgumentException("Media not found: " + id);
+        }
+        String ext = info.extension();
+        source = new SourceRecord(uri, MediaCacheIndex.keyFor(uri, info.size, info.dateModified),
+            ext == null || ext.isEmpty() ? "dat" : ext);
+        sources.put(id, source);
+        return source;
+    }
+
+    private File cachedCopy(SourceRecord source) throws IOException {
+        MediaCacheIndex cache = getCacheIndex();
+        File dest;
+        synchronized (cache.lockFor(source.baseName)) {
+            dest = cache.lookup(source.baseName);
+            if (dest == null) {
+                dest = cache.fileFor(source.baseName + "." + source.ext);
+                getCopyEngine().copy(source.uri, dest, MediaCopyEngine.DEFAULT_BUFFER_SIZE, null);
+                cache.put(source.baseName, dest);
+            }
+        }
+        cache.flush();
+        return dest;
+    }
+
+    // Copie à la demande d'un média renvoyé sans copie (copyMode "none" ou "lazy")
+    private JSONObject materialize(String id) throws Exception {
+        File dest = cachedCopy(sourceFor(id));
+
+        JSONObject obj = new JSONObject();
+        obj.put("id", id);
+        obj.put("uri", "file://" + dest.getAbsolutePath());
+        obj.put("fileSize", dest.length());
+        return obj;
+    }
+
+    // readChunk / getChunkPlan lisent le fichier renvoyé à JS (copie ou sortie resize / HEIC / transcode) ;
+    // sans fichier, ou avec source: 'original', le média d'origine : la copie en cache si elle existe,
+    // sinon le content URI ; une source non seekable est d'abord copiée
+    private MediaChunkReader.Chunk readChunk(String id, long offset, int length, boolean original) throws Exception {
+        SourceRecord source = sourceFor(id);
+        File output = original ? null : outputOf(source);
+        if (output != null) {
+            MediaChunkReader.Chunk chunk = getChunkReader().read(Uri.fromFile(output), offset, length);
+            if (chunk == null) throw new IOException("Cannot read " + output.getName());
+            return chunk;
+        }
+
+        File cached = getCacheIndex().lookup(source.baseName);
+        MediaChunkReader reader = getChunkReader();
+        MediaChunkReader.Chunk chunk = reader.read(cached != null ? Uri.fromFile(cached) : source.uri, offset, length);
+        if (chunk == null) {
+            chunk = reader.read(Uri.fromFile(cachedCopy(source)), offset, length);
+        }
+        if (chunk == null) {
+            throw new IOException("Cannot read " + source.uri);
+        }
+        return chunk;
+    }
+
+    private JSONObject chunkPlan(String id, int chunkSize, boolean original) throws Exception {
+        SourceRecord source = sourceFor(id);
+        File output = original ? null : outputOf(source);
+        File cached = output != null ? output : getCacheIndex().lookup(source.baseName);
+        long size = cached != null ? cached.length() : getChunkReader().size(source.uri);
+        if (size < 0) {
+            size = cachedCopy(source).length();
+        }
+
+        JSONObject plan = MediaChunkReader.plan(size, chunkSize);
+        plan.put("id", id);
+        return plan;
+    }
+
+    // Fichier renvoyé par getMedias pour cette source, null s'il s'agissait de l'original non copié.
+    // Une sortie traitée sortie du cache n'est pas remplacée par l'original : la taille et le contenu
+    // ne correspondraient plus à ceux de l'élément.
+    private File outputOf(SourceRecord source) throws IOException {
+        if (source.output == null) return null;
+        if (source.output.exists()) return source.output;
+        if (source.processed) {
+            throw new IOException("Processed file no longer in cache, call getMedias again: " + source.uri);
+        }
+        return null;
+    }
+
+    private ParcelFileDescriptor openFileDescriptor(Uri uri) throws FileNotFoundException {
+        return cordova.getContext().getContentResolver().openFileDescriptor(uri, "r");
+    }
+
+    private boolean canOpenFileDescriptor(Uri uri) {
+        try (ParcelFileDescriptor pfd = openFileDescriptor(uri)) {
+            return pfd != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // Avant Android 10 il n'y a pas de loadThumbnail : l'image vient de la sonde vidéo
+    private boolean needsVideoFrame(String baseName, ProcessOptions options) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q
+                && getThumbnailGenerator().hasMissing(baseName, options.thumbnails, getCacheIndex());
+    }
+
+    private VideoProbe probeVideo(Uri uri, String baseName, ProcessOptions options) {
+        int frameSize = needsVideoFrame(baseName, options)
+                ? getThumbnailGenerator().largestSize(options.thumbnails) : 0;
+        return VideoProbe.probe(cordova.getContext().getContentResolver(), uri, frameSize);
+    }
+
+    // MIME connu sans ouvrir le fichier, sinon null (le conteneur est alors sondé par VideoProbe)
+    private String resolveMime(MediaInfo info, String ext) {
+
+        if (info.mimeType != null) return info.mimeType;
+
         if (ext != null) {
             String lower = ext.toLowerCase();
             switch (lower) {
@@ -666,31 +2583,7 @@ public class MediaPicker extends CordovaPlugin {
             }
         }
 
-        // Try via MediaMetadataRetriever for video
-        try (MediaMetadataRetriever retriever = new MediaMetadataRetriever()) {
-            retriever.setDataSource(dest.getAbsolutePath());
-            String mimeFromMeta = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_MIMETYPE);
-            if (mimeFromMeta != null) return mimeFromMeta;
-        } catch (Exception ignored) {}
-
-        return "application/octet-stream";
-    }
-
-    private String getExtension(Uri uri) {
-        String ext = null;
-        Cursor cursor = cordova.getContext().getContentResolver()
-            .query(uri, null, null, null, null);
-        if (cursor != null) {
-            int nameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
-            if (nameIndex != -1 && cursor.moveToFirst()) {
-                String name = cursor.getString(nameIndex);
-                int dot = name.lastIndexOf('.');
-                if (dot > 0)
-                    ext = name.substring(dot + 1);
-            }
-            cursor.close();
-        }
-        return ext;
+        return null;
     }
 
     private void showLoaderOverlay() {
@@ -721,10 +2614,69 @@ public class MediaPicker extends CordovaPlugin {
         });
     }
 
-    private void processGetLastMedias(JSONArray args) {
+    // Rejoue uniquement les éléments en échec d'un lot précédent, avec leurs index d'origine.
+    // Les copies, conversions et miniatures déjà en cache sont réutilisées ; le résultat est toujours {items, failures}.
+    private void retryFailures(MediaRequest request, JSONArray failures) {
+        final CallbackContext ctx = request.callback;
+        final ProcessOptions options = request.options;
+
+        cordova.getThreadPool().execute(() -> {
+            ArrayList<Uri> uris = new ArrayList<>();
+            ArrayList<Integer> indices = new ArrayList<>();
+            for (int i = 0; i < failures.length(); i++) {
+                JSONObject failure = failures.optJSONObject(i);
+                String uri = failure != null ? failure.optString("uri", "") : "";
+                if (uri.isEmpty())
+                    continue;
+                uris.add(Uri.parse(uri));
+                indices.add(failure.optInt("index", i));
+            }
+
+            ItemListener listener = !options.sendsEvents() ? null : new ItemListener() {
+                @Override
+                public void onItem(JSONObject item) {
+                    sendStreamItem(ctx, item);
+                }
+
+                @Override
+                public void onProgress(int index, long copied, long total) {
+                    if (options.progress)
+                        sendProgress(ctx, index, copied, total);
+                }
+
+                @Override
+                public void onTranscodeProgress(int index, double progress) {
+                    if (options.progress)
+                        sendTranscodeProgress(ctx, index, progress);
+                }
+            };
+
+            try {
+                List<String> errors = Collections.synchronizedList(new ArrayList<>());
+                List<JSONObject> remaining = Collections.synchronizedList(new ArrayList<>());
+                JSONArray items = new JSONArray();
+                for (JSONObject item : processInParallel(uris, indices, options, errors, remaining, listener))
+                    items.put(item);
+                sendBatch(ctx, options, items, toArray(remaining));
+            } catch (CancellationException e) {
+                ctx.error(e.getMessage());
+            } catch (Exception e) {
+                ctx.error("Retry error: " + e.getMessage());
+            } finally {
+                jobs.remove(request.job.id);
+                endCacheBatch(request.job);
+            }
+        });
+    }
+
+    private void processGetLastMedias(MediaRequest request) {
+        JSONArray args = request.args;
         int limit = 20;
         int offset = 0; // Ajout de l'offset
+        String pageToken = null;
+        boolean keyset = false; // pageToken fourni (null pour la première page) : pagination par clé
         String lastMediaType = "images";
+        ProcessOptions pageOptions = new ProcessOptions();
 
         if (args != null && args.length() > 0) {
             JSONObject opts = args.optJSONObject(0);
@@ -732,28 +2684,74 @@ public class MediaPicker extends CordovaPlugin {
                 lastMediaType = opts.optString("mediaType", "images");
                 limit = opts.optInt("limit", 20);
                 offset = opts.optInt("offset", 0); // Récupération de l'offset
+                keyset = opts.has("pageToken");
+                pageToken = opts.isNull("pageToken") ? null : opts.optString("pageToken", null);
+                pageOptions = ProcessOptions.from(opts);
             }
         }
+        pageOptions.job = request.job;
 
         final String finalMediaType = lastMediaType;
         final int finalLimit = limit;
         final int finalOffset = offset;
+        final boolean finalKeyset = keyset;
+        final String finalPageToken = pageToken;
+        final ProcessOptions finalOptions = pageOptions;
+        final CallbackContext ctx = request.callback;
+
+        cancelPrefetch();
 
         cordova.getThreadPool().execute(() -> {
             try {
                 // On passe l'offset à la méthode de récupération
-                JSONArray res = getLastMedias(finalMediaType, finalLimit, finalOffset);
-                callbackContext.success(res);
+                ItemListener listener = !finalOptions.sendsEvents() ? null : new ItemListener() {
+                    @Override
+                    public void onItem(JSONObject item) {
+                        sendStreamItem(ctx, item);
+                    }
+
+                    @Override
+                    public void onProgress(int index, long copied, long total) {
+                        if (finalOptions.progress)
+                            sendProgress(ctx, index, copied, total);
+                    }
+
+                    @Override
+                    public void onTranscodeProgress(int index, double progress) {
+                        if (finalOptions.progress)
+                            sendTranscodeProgress(ctx, index, progress);
+                    }
+                };
+                PageKey after = finalKeyset ? PageKey.decode(finalPageToken) : null;
+                MediaPage page = getLastMedias(finalMediaType, finalLimit, finalKeyset ? 0 : finalOffset,
+                    after, finalOptions, listener);
+                if (finalKeyset) {
+                    sendPage(ctx, finalOptions, page);
+                } else if (page.failures != null) {
+                    sendBatch(ctx, finalOptions, page.items, page.failures);
+                } else {
+                    sendResult(ctx, finalOptions, page.items);
+                }
+
+                // La page est servie : on prépare la suivante pendant que l'utilisateur la parcourt
+                if (finalOptions.prefetch > 0 && !finalOptions.metadataOnly && page.nextPageToken != null)
+                    prefetchAfter(finalMediaType, PageKey.decode(page.nextPageToken), finalOptions);
+            } catch (CancellationException e) {
+                ctx.error(e.getMessage());
             } catch (Exception e) {
-                e.printStackTrace();
-                callbackContext.error("Internal error: " + e.getMessage());
+                Log.e("MediaPicker", "getLastMedias error", e);
+                ctx.error("Internal error: " + e.getMessage());
+            } finally {
+                jobs.remove(request.job.id);
+                endCacheBatch(request.job);
             }
         });
     }
 
     @Override
     public void onRequestPermissionResult(int requestCode, String[] permissions, int[] grantResults) {
-        if (requestCode == PERMISSION_REQUEST_CODE) {
+        MediaRequest request = awaitingPermission.remove(requestCode);
+        if (request != null) {
             boolean allGranted = true;
             if (grantResults.length > 0) {
                 for (int r : grantResults) {
@@ -769,15 +2767,10 @@ public class MediaPicker extends CordovaPlugin {
             if (allGranted) {
                 // IMPORTANT : Utiliser le thread de Cordova pour ne pas bloquer l'UI
                 // et s'assurer que le context est toujours valide.
-                cordova.getThreadPool().execute(() -> {
-                    // Si lastArgs a été perdu durant le switch (rare mais possible),
-                    // on utilise des valeurs par défaut.
-                    processGetLastMedias(this.lastArgs);
-                });
+                cordova.getThreadPool().execute(() -> processGetLastMedias(request));
             } else {
-                if (this.callbackContext != null) {
-                    this.callbackContext.error("Permission denied");
-                }
+                jobs.remove(request.job.id);
+                request.callback.error("Permission denied");
             }
         }
     }
@@ -0,0 +1,165 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.net.Uri;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.okanbeydanol.mediaPicker.MediaInfoResolver.MediaInfo;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Warms up the items that follow a served getLastMedias page on one background-priority thread:
+ * their MediaStore metadata is kept here (taken back by the next page instead of being queried
+ * again) and their thumbnails go into the media cache.
+ *
+ * Only one warm-up runs at a time: a new one, a new query or a memory-pressure signal
+ * (onTrimMemory) cancels it. Hits and misses count the served items that were, or were not, warmed.
+ */
+class MediaPrefetcher implements ComponentCallbacks2 {
+
+    private static final String TAG = "MediaPrefetcher";
+    private static final int MAX_ENTRIES = 512;
+    private static final long MAX_AGE_MS = 60_000; // au-delà, la ligne MediaStore a pu changer
+
+    interface Task {
+        void run(AtomicBoolean cancelled) throws Exception;
+    }
+
+    private static class Warmed {
+        final MediaInfo info;
+        final long at = SystemClock.elapsedRealtime();
+
+        Warmed(MediaInfo info) {
+            this.info = info;
+        }
+    }
+
+    private final Map<Uri, Warmed> warmed = new LinkedHashMap<Uri, Warmed>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Uri, Warmed> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private ExecutorService executor;
+    private Future<?> current;
+    private AtomicBoolean currentCancelled;
+
+    private long hits;
+    private long misses;
+    private long cancelled;
+
+    synchronized void schedule(Task task) {
+        cancel();
+        AtomicBoolean flag = new AtomicBoolean();
+        currentCancelled = flag;
+        current = getExecutor().submit(() -> {
+            try {
+                task.run(flag);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                if (!flag.get()) Log.w(TAG, "Prefetch failed: " + e.getMessage());
+            }
+        });
+    }
+
+    // Stoppe le préchargement en cours ; ce qui est déjà préparé reste utilisable
+    synchronized void cancel() {
+        if (current != null && !current.isDone()) {
+            currentCancelled.set(true);
+            current.cancel(true);
+            cancelled++;
+        }
+        current = null;
+        currentCancelled = null;
+    }
+
+    synchronized void offer(MediaInfo info) {
+        warmed.put(info.uri, new Warmed(info));
+    }
+
+    /**
+     * Takes back the warmed metadata of the given URIs and counts a hit or a miss for each one.
+     * The returned map is mutable and only holds the URIs that were warmed.
+     */
+    synchronized Map<Uri, MediaInfo> take(List<Uri> uris) {
+        Map<Uri, MediaInfo> found = new HashMap<>();
+        long now = SystemClock.elapsedRealtime();
+        for (Uri uri : uris) {
+            Warmed entry = warmed.remove(uri);
+            if (entry != null && now - entry.at <= MAX_AGE_MS) {
+                found.put(uri, entry.info);
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        return found;
+    }
+
+    synchronized JSONObject stats() throws JSONException {
+        JSONObject result = new JSONObject();
+        result.put("hits", hits);
+        result.put("misses", misses);
+        result.put("pending", warmed.size());
+        result.put("cancelled", cancelled);
+        return result;
+    }
+
+    synchronized void shutdown() {
+        cancel();
+        warmed.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // Toute pression mémoire passe avant le confort du défilement
+        synchronized (this) {
+            cancel();
+            warmed.clear();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {}
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, "MediaPicker-prefetch"));
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,170 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import android.util.Size;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Produces thumbnails at several sizes for images and videos, always from the original content URI
+ * (never from the cached copy), and stores them in the media cache under a key made of the source
+ * identity, the size and the encoding, so later pages reuse them.
+ *
+ * ContentResolver.loadThumbnail is preferred on Android 10+ (MediaStore usually has it already);
+ * otherwise images are decoded at reduced size and videos use a scaled frame. The largest missing
+ * size is produced once and the smaller ones are scaled down from it.
+ */
+class ThumbnailGenerator {
+
+    private static final String TAG = "ThumbnailGenerator";
+
+    static class Spec {
+        int[] sizes = {128};
+        Bitmap.CompressFormat format = Bitmap.CompressFormat.JPEG;
+        int quality = 80;
+
+        String extension() {
+            return format == Bitmap.CompressFormat.JPEG ? "jpg" : format == Bitmap.CompressFormat.PNG ? "png" : "webp";
+        }
+
+        String keyFor(String baseKey, int size) {
+            return "thumb_" + baseKey + "_" + size + "q" + quality + extension();
+        }
+    }
+
+    private final ContentResolver resolver;
+    private final ImageTranscoder transcoder;
+
+    ThumbnailGenerator(ContentResolver resolver, ImageTranscoder transcoder) {
+        this.resolver = resolver;
+        this.transcoder = transcoder;
+    }
+
+    boolean hasMissing(String baseKey, Spec spec, MediaCacheIndex cache) {
+        for (int size : spec.sizes) {
+            if (!cache.contains(spec.keyFor(baseKey, size))) return true;
+        }
+        return false;
+    }
+
+    int largestSize(Spec spec) {
+        int largest = 0;
+        for (int size : spec.sizes) largest = Math.max(largest, size);
+        return largest;
+    }
+
+    /**
+     * Returns the thumbnail file of each requested size, in ascending size order.
+     * Sizes that cannot be produced are missing from the map.
+     *
+     * @param frame bitmap already decoded by the caller (video probe), used instead of loading the
+     *              source; it is consumed (recycled) by this call. May be null.
+     */
+    Map<Integer, File> generate(Uri uri, boolean video, String baseKey, Spec spec, MediaCacheIndex cache,
+                                Bitmap frame) {
+        int[] sizes = spec.sizes.clone();
+        Arrays.sort(sizes);
+
+        Map<Integer, File> files = new LinkedHashMap<>();
+        Bitmap source = frame;
+        try {
+            // Du plus grand au plus petit : chaque taille manquante est dérivée de la précédente
+            for (int i = sizes.length - 1; i >= 0; i--) {
+                int size = sizes[i];
+                String key = spec.keyFor(baseKey, size);
+
+                synchronized (cache.lockFor(key)) {
+                    File file = cache.lookup(key);
+                    if (file == null) {
+                        if (source == null) {
+                            source = load(uri, video, size);
+                            if (source == null) break;
+                        }
+                        Bitmap scaled = scaleToFit(source, size);
+                        if (scaled != source) {
+                            source.recycle();
+                            source = scaled;
+                        }
+                        file = cache.fileFor(key + "." + spec.extension());
+                        write(source, file, spec);
+                        cache.put(key, file);
+                    }
+                    files.put(size, file);
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Thumbnail unavailable for " + uri + ": " + e.getMessage());
+        } finally {
+            if (source != null) source.recycle();
+        }
+
+        Map<Integer, File> ordered = new LinkedHashMap<>();
+        for (int size : sizes) {
+            File file = files.get(size);
+            if (file != null) ordered.put(size, file);
+        }
+        return ordered;
+    }
+
+    private Bitmap load(Uri uri, boolean video, int size) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            try {
+                return resolver.loadThumbnail(uri, new Size(size, size), null);
+            } catch (Exception e) {
+                Log.d(TAG, "loadThumbnail failed for " + uri + ", decoding instead: " + e.getMessage());
+            }
+        }
+        return video ? videoFrame(uri, size) : decodeImage(uri, size);
+    }
+
+    private Bitmap decodeImage(Uri uri, int size) {
+        ImageTranscoder.Settings settings = new ImageTranscoder.Settings();
+        settings.maxWidth = size;
+        settings.maxHeight = size;
+        try {
+            return transcoder.decode(uri, settings);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private Bitmap videoFrame(Uri uri, int size) {
+        VideoProbe probe = VideoProbe.probe(resolver, uri, size);
+        return probe != null ? probe.frame : null;
+    }
+
+    private static Bitmap scaleToFit(Bitmap bitmap, int size) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (width <= size && height <= size) return bitmap;
+        double scale = Math.min((double) size / width, (double) size / height);
+        return Bitmap.createScaledBitmap(bitmap,
+            Math.max(1, (int) Math.round(width * scale)),
+            Math.max(1, (int) Math.round(height * scale)), true);
+    }
+
+    private static void write(Bitmap bitmap, File dest, Spec spec) throws IOException {
+        File partial = new File(dest.getParentFile(), dest.getName() + ".part");
+        try (FileOutputStream out = new FileOutputStream(partial)) {
+            if (!bitmap.compress(spec.format, spec.quality, out)) {
+                throw new IOException("Cannot encode " + dest.getName());
+            }
+        } catch (IOException | RuntimeException e) {
+            partial.delete();
+            throw e;
+        }
+        if (!partial.renameTo(dest)) {
+            partial.delete();
+            throw new IOException("Cannot move " + partial.getName() + " into cache");
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+/**
+ * Reads everything the plugin needs from a video container in one pass: a single
+ * MediaMetadataRetriever on the original file descriptor (never on the cached copy) gives
+ * the dimensions, duration, rotation, bitrate, frame rate, MIME type and optionally a frame.
+ */
+class VideoProbe {
+
+    private static final String TAG = "VideoProbe";
+
+    int width;
+    int height;
+    long durationMs = -1;
+    int rotation = -1;
+    long bitrate = -1;
+    double frameRate = -1;
+    String mimeType;
+    boolean hasVideo;
+    Bitmap frame;   // only when requested, owned by the caller
+
+    /**
+     * @param frameSize longest side of the frame to extract, 0 for no frame
+     * @return the probe, or null when the source cannot be opened or parsed
+     */
+    static VideoProbe probe(ContentResolver resolver, Uri uri, int frameSize) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null) return null;
+            retriever.setDataSource(pfd.getFileDescriptor());
+
+            VideoProbe probe = new VideoProbe();
+            probe.mimeType = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_MIMETYPE);
+            probe.hasVideo = "yes".equals(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_HAS_VIDEO));
+            probe.width = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH), 0);
+            probe.height = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT), 0);
+            probe.durationMs = parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION), -1);
+            probe.rotation = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION), -1);
+            probe.bitrate = parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_BITRATE), -1);
+            probe.frameRate = frameRate(retriever, probe.durationMs);
+
+            if (frameSize > 0 && probe.hasVideo) {
+                probe.frame = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1
+                    ? retriever.getScaledFrameAtTime(0, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, frameSize, frameSize)
+                    : retriever.getFrameAtTime(0, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+            }
+            return probe;
+        } catch (Exception e) {
+            Log.w(TAG, "Cannot probe " + uri + ": " + e.getMessage());
+            return null;
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception ignored) {}
+        }
+    }
+
+    // Nombre d'images / durée quand le conteneur le donne, sinon la cadence de capture (ralenti)
+    private static double frameRate(MediaMetadataRetriever retriever, long durationMs) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && durationMs > 0) {
+            long frames = parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_FRAME_COUNT), -1);
+            if (frames > 0) return Math.round(frames * 100000.0 / durationMs) / 100.0;
+        }
+        String capture = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_CAPTURE_FRAMERATE);
+        if (capture != null) {
+            try {
+                return Double.parseDouble(capture);
+            } catch (NumberFormatException ignored) {}
+        }
+        return -1;
+    }
+
+    private static int parseInt(String value, int fallback) {
+        if (value == null) return fallback;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null) return fallback;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
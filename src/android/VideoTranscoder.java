@@ -0,0 +1,909 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.content.ContentResolver;
+import android.graphics.SurfaceTexture;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.net.Uri;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Re-encodes a video read from a content URI into an MP4 file with MediaExtractor, MediaCodec and
+ * MediaMuxer. Decoded frames go from the decoder's output surface to the encoder's input surface
+ * through one OpenGL ES draw (which does the scaling), never through ByteBuffers; the audio track
+ * is copied as is. The framework objects are created by a CodecFactory, so the pipeline can run
+ * against stubs in JVM tests.
+ */
+class VideoTranscoder {
+
+    private static final String TAG = "VideoTranscoder";
+    private static final long TIMEOUT_US = 10000;
+
+    interface ProgressListener {
+        void onProgress(double fraction);
+    }
+
+    static class Settings {
+        int maxHeight = 720;  // shorter side of the output, 0 : source size
+        int bitrate;          // bits per second, 0 : derived from the output size
+        String codec = "avc"; // "avc" or "hevc"
+
+        String mimeType() {
+            return "hevc".equalsIgnoreCase(codec) ? MediaFormat.MIMETYPE_VIDEO_HEVC : MediaFormat.MIMETYPE_VIDEO_AVC;
+        }
+
+        // Distinguishes cached outputs produced with different settings
+        String signature() {
+            return "v" + maxHeight + "b" + bitrate + codec.toLowerCase();
+        }
+    }
+
+    static class Result {
+        final int width;   // as displayed (rotation applied)
+        final int height;
+        final long durationMs;
+
+        Result(int width, int height, long durationMs) {
+            this.width = width;
+            this.height = height;
+            this.durationMs = durationMs;
+        }
+    }
+
+    // Façades minimales des classes du framework utilisées par le pipeline
+
+    interface Extractor {
+        void setDataSource(FileDescriptor source) throws IOException;
+        int getTrackCount();
+        MediaFormat getTrackFormat(int index);
+        void selectTrack(int index);
+        int readSampleData(ByteBuffer buffer, int offset);
+        long getSampleTime();
+        int getSampleFlags();
+        boolean advance();
+        void release();
+    }
+
+    interface Codec {
+        void configure(MediaFormat format, Surface surface, int flags);
+        Surface createInputSurface();
+        void start();
+        int dequeueInputBuffer(long timeoutUs);
+        ByteBuffer getInputBuffer(int index);
+        void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags);
+        int dequeueOutputBuffer(MediaCodec.BufferInfo info, long timeoutUs);
+        ByteBuffer getOutputBuffer(int index);
+        MediaFormat getOutputFormat();
+        void releaseOutputBuffer(int index, boolean render);
+        void signalEndOfInputStream();
+        void stop();
+        void release();
+    }
+
+    interface Muxer {
+        void setOrientationHint(int degrees);
+        int addTrack(MediaFormat format);
+        void start();
+        void writeSampleData(int track, ByteBuffer data, MediaCodec.BufferInfo info);
+        void stop();
+        void release();
+    }
+
+    /** Encoder input: each swapBuffers hands the frame drawn since the previous one to the encoder. */
+    interface EncoderSurface {
+        void setPresentationTime(long nanos);
+        void swapBuffers();
+        void release();
+    }
+
+    /** Decoder output: awaitNewImage waits for a rendered frame, drawImage draws it on the encoder surface. */
+    interface DecoderSurface {
+        Surface getSurface();
+        void awaitNewImage();
+        void drawImage();
+        void release();
+    }
+
+    interface CodecFactory {
+        Extractor createExtractor();
+        Codec createEncoder(String mimeType) throws IOException;
+        Codec createDecoder(String mimeType) throws IOException;
+        Muxer createMuxer(File output) throws IOException;
+        /** Surface over the encoder's input surface, current on this thread, viewport width x height. */
+        EncoderSurface createEncoderSurface(Surface surface, int width, int height);
+        /** Created once the encoder surface is current: its texture belongs to that EGL context. */
+        DecoderSurface createDecoderSurface();
+    }
+
+    static final CodecFactory PLATFORM = new CodecFactory() {
+        @Override
+        public Extractor createExtractor() {
+            return new PlatformExtractor();
+        }
+
+        @Override
+        public Codec createEncoder(String mimeType) throws IOException {
+            return new PlatformCodec(MediaCodec.createEncoderByType(mimeType));
+        }
+
+        @Override
+        public Codec createDecoder(String mimeType) throws IOException {
+            return new PlatformCodec(MediaCodec.createDecoderByType(mimeType));
+        }
+
+        @Override
+        public Muxer createMuxer(File output) throws IOException {
+            return new PlatformMuxer(new MediaMuxer(output.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4));
+        }
+
+        @Override
+        public EncoderSurface createEncoderSurface(Surface surface, int width, int height) {
+            InputSurface inputSurface = new InputSurface(surface);
+            try {
+                inputSurface.makeCurrent();
+                GLES20.glViewport(0, 0, width, height);
+            } catch (RuntimeException e) {
+                inputSurface.release();
+                throw e;
+            }
+            return inputSurface;
+        }
+
+        @Override
+        public DecoderSurface createDecoderSurface() {
+            return new OutputSurface();
+        }
+    };
+
+    private final ContentResolver resolver;
+    private final CodecFactory factory;
+
+    VideoTranscoder(ContentResolver resolver) {
+        this(resolver, PLATFORM);
+    }
+
+    VideoTranscoder(ContentResolver resolver, CodecFactory factory) {
+        this.resolver = resolver;
+        this.factory = factory;
+    }
+
+    /**
+     * Writes the transcoded video to dest (through a .part file, removed on failure).
+     *
+     * @throws CancellationException when cancelled is set or the thread is interrupted while transcoding
+     */
+    Result transcode(Uri source, File dest, Settings settings, AtomicBoolean cancelled,
+                     ProgressListener progress) throws IOException {
+        try (ParcelFileDescriptor video = resolver.openFileDescriptor(source, "r");
+             ParcelFileDescriptor audio = resolver.openFileDescriptor(source, "r")) {
+            if (video == null || audio == null) throw new IOException("Cannot open " + source);
+            return transcode(video.getFileDescriptor(), audio.getFileDescriptor(), dest, settings, cancelled, progress);
+        }
+    }
+
+    // Deux descripteurs sur la même source : les extracteurs vidéo et audio avancent chacun de leur côté
+    Result transcode(FileDescriptor video, FileDescriptor audio, File dest, Settings settings, AtomicBoolean cancelled,
+                     ProgressListener progress) throws IOException {
+        File partial = new File(dest.getParentFile(), dest.getName() + ".part");
+        try {
+            Result result = run(video, audio, partial, settings, cancelled, progress);
+            if (!partial.renameTo(dest)) {
+                throw new IOException("Cannot move " + partial.getName() + " into cache");
+            }
+            return result;
+        } catch (IOException | RuntimeException e) {
+            partial.delete();
+            throw e;
+        }
+    }
+
+    private Result run(FileDescriptor videoSource, FileDescriptor audioSource, File output, Settings settings,
+                       AtomicBoolean cancelled, ProgressListener progress) throws IOException {
+        Extractor videoExtractor = factory.createExtractor();
+        Extractor audioExtractor = factory.createExtractor();
+        Codec decoder = null;
+        Codec encoder = null;
+        Muxer muxer = null;
+        EncoderSurface inputSurface = null;
+        DecoderSurface outputSurface = null;
+        boolean muxing = false;
+
+        try {
+            videoExtractor.setDataSource(videoSource);
+            int videoTrack = findTrack(videoExtractor, "video/");
+            if (videoTrack < 0) throw new IOException("No video track");
+            videoExtractor.selectTrack(videoTrack);
+            MediaFormat inputFormat = videoExtractor.getTrackFormat(videoTrack);
+
+            int width = inputFormat.getInteger(MediaFormat.KEY_WIDTH);
+            int height = inputFormat.getInteger(MediaFormat.KEY_HEIGHT);
+            int rotation = inputFormat.containsKey("rotation-degrees") ? inputFormat.getInteger("rotation-degrees") : 0;
+            long durationUs = inputFormat.containsKey(MediaFormat.KEY_DURATION)
+                ? inputFormat.getLong(MediaFormat.KEY_DURATION) : -1;
+
+            // Images encodées dans l'orientation stockée, la rotation n'est appliquée qu'une fois, par
+            // l'indication du muxer : le décodeur ne doit pas tourner les images de sa surface
+            inputFormat.setInteger("rotation-degrees", 0);
+
+            int[] size = outputSize(width, height, settings.maxHeight);
+            MediaFormat outputFormat = MediaFormat.createVideoFormat(settings.mimeType(), size[0], size[1]);
+            outputFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT,
+                MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+            outputFormat.setInteger(MediaFormat.KEY_BIT_RATE,
+                settings.bitrate > 0 ? settings.bitrate : defaultBitrate(size[0], size[1]));
+            outputFormat.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate(inputFormat));
+            outputFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, 2);
+
+            encoder = factory.createEncoder(settings.mimeType());
+            encoder.configure(outputFormat, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            inputSurface = factory.createEncoderSurface(encoder.createInputSurface(), size[0], size[1]);
+            encoder.start();
+
+            // La texture du décodeur doit être créée avec le contexte EGL de l'encodeur courant
+            outputSurface = factory.createDecoderSurface();
+            decoder = factory.createDecoder(inputFormat.getString(MediaFormat.KEY_MIME));
+            decoder.configure(inputFormat, outputSurface.getSurface(), 0);
+            decoder.start();
+
+            audioExtractor.setDataSource(audioSource);
+            int audioTrack = findTrack(audioExtractor, "audio/");
+            MediaFormat audioFormat = null;
+            if (audioTrack >= 0) {
+                audioExtractor.selectTrack(audioTrack);
+                audioFormat = audioExtractor.getTrackFormat(audioTrack);
+            }
+
+            muxer = factory.createMuxer(output);
+            muxer.setOrientationHint(rotation);
+
+            MediaCodec.BufferInfo decoded = new MediaCodec.BufferInfo();
+            MediaCodec.BufferInfo encoded = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean decoderDone = false;
+            boolean encoderDone = false;
+            int muxVideoTrack = -1;
+            AudioCopier audioCopier = null;
+
+            while (!encoderDone) {
+                checkCancelled(cancelled);
+
+                // Extracteur -> décodeur
+                if (!inputDone) {
+                    int index = decoder.dequeueInputBuffer(TIMEOUT_US);
+                    if (index >= 0) {
+                        ByteBuffer buffer = decoder.getInputBuffer(index);
+                        int sampleSize = videoExtractor.readSampleData(buffer, 0);
+                        if (sampleSize < 0) {
+                            decoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            decoder.queueInputBuffer(index, 0, sampleSize, videoExtractor.getSampleTime(), 0);
+                            videoExtractor.advance();
+                        }
+                    }
+                }
+
+                // Décodeur -> surface -> encodeur
+                if (!decoderDone) {
+                    int index = decoder.dequeueOutputBuffer(decoded, TIMEOUT_US);
+                    if (index >= 0) {
+                        boolean render = decoded.size > 0;
+                        decoder.releaseOutputBuffer(index, render);
+                        if (render) {
+                            outputSurface.awaitNewImage();
+                            outputSurface.drawImage();
+                            inputSurface.setPresentationTime(decoded.presentationTimeUs * 1000);
+                            inputSurface.swapBuffers();
+                        }
+                        if ((decoded.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                            encoder.signalEndOfInputStream();
+                            decoderDone = true;
+                        }
+                    }
+                }
+
+                // Encodeur -> muxer
+                int index = encoder.dequeueOutputBuffer(encoded, TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    muxVideoTrack = muxer.addTrack(encoder.getOutputFormat());
+                    if (audioFormat != null) {
+                        try {
+                            audioCopier = new AudioCopier(audioExtractor, muxer, muxer.addTrack(audioFormat), audioFormat);
+                        } catch (RuntimeException e) {
+                            Log.w(TAG, "Audio track dropped: " + e.getMessage());
+                        }
+                    }
+                    muxer.start();
+                    muxing = true;
+                } else if (index >= 0) {
+                    ByteBuffer data = encoder.getOutputBuffer(index);
+                    if ((encoded.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                        encoded.size = 0; // déjà transmis au muxer via le format de sortie
+                    }
+                    if (encoded.size > 0 && muxing && data != null) {
+                        // Entrelacement : l'audio qui précède cette image est écrit avant elle
+                        if (audioCopier != null) audioCopier.writeUntil(encoded.presentationTimeUs, cancelled);
+                        data.position(encoded.offset);
+                        data.limit(encoded.offset + encoded.size);
+                        muxer.writeSampleData(muxVideoTrack, data, encoded);
+                        if (progress != null && durationUs > 0) {
+                            progress.onProgress(Math.min(1.0, (double) encoded.presentationTimeUs / durationUs));
+                        }
+                    }
+                    encoder.releaseOutputBuffer(index, false);
+                    if ((encoded.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        encoderDone = true;
+                    }
+                }
+            }
+
+            if (!muxing) throw new IOException("Encoder produced no output");
+            if (audioCopier != null) {
+                audioCopier.writeUntil(Long.MAX_VALUE, cancelled);
+            }
+            muxer.stop();
+            muxing = false;
+            if (progress != null) progress.onProgress(1.0);
+
+            boolean swap = rotation == 90 || rotation == 270;
+            return new Result(swap ? size[1] : size[0], swap ? size[0] : size[1],
+                durationUs > 0 ? durationUs / 1000 : -1);
+        } finally {
+            if (muxer != null) {
+                if (muxing) {
+                    try {
+                        muxer.stop();
+                    } catch (RuntimeException ignored) {}
+                }
+                try {
+                    muxer.release();
+                } catch (RuntimeException ignored) {}
+            }
+            release(decoder);
+            release(encoder);
+            if (outputSurface != null) outputSurface.release();
+            if (inputSurface != null) inputSurface.release();
+            videoExtractor.release();
+            audioExtractor.release();
+        }
+    }
+
+    /**
+     * Copies the audio samples as is, interleaved with the video: each call writes the samples up to
+     * the given presentation time, so the track with the lower timestamp is always written first.
+     */
+    private static class AudioCopier {
+        private final Extractor extractor;
+        private final Muxer muxer;
+        private final int track;
+        private final ByteBuffer buffer;
+        private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        private boolean done;
+
+        AudioCopier(Extractor extractor, Muxer muxer, int track, MediaFormat format) {
+            this.extractor = extractor;
+            this.muxer = muxer;
+            this.track = track;
+            int capacity = format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)
+                ? format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE) : 256 * 1024;
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+        }
+
+        void writeUntil(long presentationTimeUs, AtomicBoolean cancelled) {
+            while (!done) {
+                checkCancelled(cancelled);
+                long sampleTime = extractor.getSampleTime();
+                if (sampleTime < 0) {
+                    done = true;
+                } else if (sampleTime > presentationTimeUs) {
+                    return;
+                } else {
+                    int sampleSize = extractor.readSampleData(buffer, 0);
+                    if (sampleSize < 0) {
+                        done = true;
+                        return;
+                    }
+                    int flags = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0
+                        ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+                    info.set(0, sampleSize, sampleTime, flags);
+                    muxer.writeSampleData(track, buffer, info);
+                    extractor.advance();
+                }
+            }
+        }
+    }
+
+    private static void checkCancelled(AtomicBoolean cancelled) {
+        if ((cancelled != null && cancelled.get()) || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Transcode cancelled");
+        }
+    }
+
+    private static int findTrack(Extractor extractor, String prefix) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith(prefix)) return i;
+        }
+        return -1;
+    }
+
+    // Le côté le plus court est ramené à maxHeight ; dimensions paires exigées par les encodeurs
+    static int[] outputSize(int width, int height, int maxHeight) {
+        int shorter = Math.min(width, height);
+        double scale = maxHeight > 0 && shorter > maxHeight ? (double) maxHeight / shorter : 1.0;
+        return new int[]{
+            Math.max(2, (int) Math.round(width * scale / 2) * 2),
+            Math.max(2, (int) Math.round(height * scale / 2) * 2)
+        };
+    }
+
+    // ~0.1 bit par pixel et par image à 30 i/s : 720p ≈ 2.8 Mb/s, 1080p ≈ 6.2 Mb/s
+    static int defaultBitrate(int width, int height) {
+        return Math.max(500_000, (int) (width * (long) height * 30 / 10));
+    }
+
+    private static int frameRate(MediaFormat format) {
+        if (!format.containsKey(MediaFormat.KEY_FRAME_RATE)) return 30;
+        try {
+            return format.getInteger(MediaFormat.KEY_FRAME_RATE);
+        } catch (ClassCastException e) {
+            return Math.round(format.getFloat(MediaFormat.KEY_FRAME_RATE));
+        }
+    }
+
+    private static void release(Codec codec) {
+        if (codec == null) return;
+        try {
+            codec.stop();
+        } catch (RuntimeException ignored) {}
+        try {
+            codec.release();
+        } catch (RuntimeException ignored) {}
+    }
+
+    private static class PlatformExtractor implements Extractor {
+        private final MediaExtractor extractor = new MediaExtractor();
+
+        @Override
+        public void setDataSource(FileDescriptor source) throws IOException {
+            extractor.setDataSource(source);
+        }
+
+        @Override
+        public int getTrackCount() {
+            return extractor.getTrackCount();
+        }
+
+        @Override
+        public MediaFormat getTrackFormat(int index) {
+            return extractor.getTrackFormat(index);
+        }
+
+        @Override
+        public void selectTrack(int index) {
+            extractor.selectTrack(index);
+        }
+
+        @Override
+        public int readSampleData(ByteBuffer buffer, int offset) {
+            return extractor.readSampleData(buffer, offset);
+        }
+
+        @Override
+        public long getSampleTime() {
+            return extractor.getSampleTime();
+        }
+
+        @Override
+        public int getSampleFlags() {
+            return extractor.getSampleFlags();
+        }
+
+        @Override
+        public boolean advance() {
+            return extractor.advance();
+        }
+
+        @Override
+        public void release() {
+            extractor.release();
+        }
+    }
+
+    private static class PlatformCodec implements Codec {
+        private final MediaCodec codec;
+
+        PlatformCodec(MediaCodec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public void configure(MediaFormat format, Surface surface, int flags) {
+            codec.configure(format, surface, null, flags);
+        }
+
+        @Override
+        public Surface createInputSurface() {
+            return codec.createInputSurface();
+        }
+
+        @Override
+        public void start() {
+            codec.start();
+        }
+
+        @Override
+        public int dequeueInputBuffer(long timeoutUs) {
+            return codec.dequeueInputBuffer(timeoutUs);
+        }
+
+        @Override
+        public ByteBuffer getInputBuffer(int index) {
+            return codec.getInputBuffer(index);
+        }
+
+        @Override
+        public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+            codec.queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+        }
+
+        @Override
+        public int dequeueOutputBuffer(MediaCodec.BufferInfo info, long timeoutUs) {
+            return codec.dequeueOutputBuffer(info, timeoutUs);
+        }
+
+        @Override
+        public ByteBuffer getOutputBuffer(int index) {
+            return codec.getOutputBuffer(index);
+        }
+
+        @Override
+        public MediaFormat getOutputFormat() {
+            return codec.getOutputFormat();
+        }
+
+        @Override
+        public void releaseOutputBuffer(int index, boolean render) {
+            codec.releaseOutputBuffer(index, render);
+        }
+
+        @Override
+        public void signalEndOfInputStream() {
+            codec.signalEndOfInputStream();
+        }
+
+        @Override
+        public void stop() {
+            codec.stop();
+        }
+
+        @Override
+        public void release() {
+            codec.release();
+        }
+    }
+
+    private static class PlatformMuxer implements Muxer {
+        private final MediaMuxer muxer;
+
+        PlatformMuxer(MediaMuxer muxer) {
+            this.muxer = muxer;
+        }
+
+        @Override
+        public void setOrientationHint(int degrees) {
+            muxer.setOrientationHint(degrees);
+        }
+
+        @Override
+        public int addTrack(MediaFormat format) {
+            return muxer.addTrack(format);
+        }
+
+        @Override
+        public void start() {
+            muxer.start();
+        }
+
+        @Override
+        public void writeSampleData(int track, ByteBuffer data, MediaCodec.BufferInfo info) {
+            muxer.writeSampleData(track, data, info);
+        }
+
+        @Override
+        public void stop() {
+            muxer.stop();
+        }
+
+        @Override
+        public void release() {
+            muxer.release();
+        }
+    }
+
+    /** EGL window surface wrapping the encoder's input surface. */
+    private static class InputSurface implements EncoderSurface {
+        private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+
+        private final Surface surface;
+        private EGLDisplay display = EGL14.EGL_NO_DISPLAY;
+        private EGLContext context = EGL14.EGL_NO_CONTEXT;
+        private EGLSurface eglSurface = EGL14.EGL_NO_SURFACE;
+
+        InputSurface(Surface surface) {
+            this.surface = surface;
+            display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+            int[] version = new int[2];
+            if (!EGL14.eglInitialize(display, version, 0, version, 1)) {
+                throw new IllegalStateException("eglInitialize failed");
+            }
+
+            int[] attributes = {
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL_RECORDABLE_ANDROID, 1,
+                EGL14.EGL_NONE
+            };
+            EGLConfig[] configs = new EGLConfig[1];
+            int[] count = new int[1];
+            if (!EGL14.eglChooseConfig(display, attributes, 0, configs, 0, 1, count, 0) || count[0] == 0) {
+                throw new IllegalStateException("No recordable EGL config");
+            }
+
+            context = EGL14.eglCreateContext(display, configs[0], EGL14.EGL_NO_CONTEXT,
+                new int[]{EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE}, 0);
+            checkEgl("eglCreateContext");
+            eglSurface = EGL14.eglCreateWindowSurface(display, configs[0], surface, new int[]{EGL14.EGL_NONE}, 0);
+            checkEgl("eglCreateWindowSurface");
+        }
+
+        void makeCurrent() {
+            if (!EGL14.eglMakeCurrent(display, eglSurface, eglSurface, context)) {
+                throw new IllegalStateException("eglMakeCurrent failed");
+            }
+        }
+
+        @Override
+        public void setPresentationTime(long nanos) {
+            EGLExt.eglPresentationTimeANDROID(display, eglSurface, nanos);
+        }
+
+        @Override
+        public void swapBuffers() {
+            EGL14.eglSwapBuffers(display, eglSurface);
+        }
+
+        // Pas d'eglTerminate : l'affichage par défaut est partagé avec le rendu de la WebView
+        @Override
+        public void release() {
+            if (display != EGL14.EGL_NO_DISPLAY) {
+                EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+                EGL14.eglDestroySurface(display, eglSurface);
+                EGL14.eglDestroyContext(display, context);
+                EGL14.eglReleaseThread();
+            }
+            surface.release();
+            display = EGL14.EGL_NO_DISPLAY;
+            context = EGL14.EGL_NO_CONTEXT;
+            eglSurface = EGL14.EGL_NO_SURFACE;
+        }
+
+        private static void checkEgl(String operation) {
+            int error = EGL14.eglGetError();
+            if (error != EGL14.EGL_SUCCESS) {
+                throw new IllegalStateException(operation + ": EGL error 0x" + Integer.toHexString(error));
+            }
+        }
+    }
+
+    /** SurfaceTexture the decoder renders into; its frames are drawn onto the current EGL surface. */
+    private static class OutputSurface implements DecoderSurface, SurfaceTexture.OnFrameAvailableListener {
+        private static final long FRAME_TIMEOUT_MS = 2500;
+
+        private final HandlerThread callbacks = new HandlerThread(TAG);
+        private final TextureRender render = new TextureRender();
+        private final SurfaceTexture texture;
+        private final Surface surface;
+        private final Object frameLock = new Object();
+        private boolean frameAvailable;
+
+        OutputSurface() {
+            render.setup();
+            callbacks.start();
+            texture = new SurfaceTexture(render.textureId());
+            texture.setOnFrameAvailableListener(this, new Handler(callbacks.getLooper()));
+            surface = new Surface(texture);
+        }
+
+        @Override
+        public Surface getSurface() {
+            return surface;
+        }
+
+        @Override
+        public void awaitNewImage() {
+            synchronized (frameLock) {
+                long deadline = SystemClock.uptimeMillis() + FRAME_TIMEOUT_MS;
+                while (!frameAvailable) {
+                    long wait = deadline - SystemClock.uptimeMillis();
+                    if (wait <= 0) throw new IllegalStateException("Decoder frame timed out");
+                    try {
+                        frameLock.wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException("Transcode interrupted");
+                    }
+                }
+                frameAvailable = false;
+            }
+            texture.updateTexImage();
+        }
+
+        @Override
+        public void drawImage() {
+            render.draw(texture);
+        }
+
+        @Override
+        public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+            synchronized (frameLock) {
+                frameAvailable = true;
+                frameLock.notifyAll();
+            }
+        }
+
+        @Override
+        public void release() {
+            surface.release();
+            texture.release();
+            render.release();
+            callbacks.quitSafely();
+        }
+    }
+
+    /** Draws an external OES texture over the whole viewport, with the SurfaceTexture transform. */
+    private static class TextureRender {
+        private static final String VERTEX_SHADER =
+            "uniform mat4 uSTMatrix;\n" +
+            "attribute vec4 aPosition;\n" +
+            "attribute vec4 aTextureCoord;\n" +
+            "varying vec2 vTextureCoord;\n" +
+            "void main() {\n" +
+            "  gl_Position = aPosition;\n" +
+            "  vTextureCoord = (uSTMatrix * aTextureCoord).xy;\n" +
+            "}\n";
+
+        private static final String FRAGMENT_SHADER =
+            "#extension GL_OES_EGL_image_external : require\n" +
+            "precision mediump float;\n" +
+            "varying vec2 vTextureCoord;\n" +
+            "uniform samplerExternalOES sTexture;\n" +
+            "void main() {\n" +
+            "  gl_FragColor = texture2D(sTexture, vTextureCoord);\n" +
+            "}\n";
+
+        // x, y, u, v (triangle strip)
+        private static final float[] QUAD = {
+            -1f, -1f, 0f, 0f,
+            1f, -1f, 1f, 0f,
+            -1f, 1f, 0f, 1f,
+            1f, 1f, 1f, 1f
+        };
+
+        private final FloatBuffer vertices = ByteBuffer.allocateDirect(QUAD.length * 4)
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        private final float[] stMatrix = new float[16];
+        private int program;
+        private int textureId;
+        private int positionHandle;
+        private int textureCoordHandle;
+        private int matrixHandle;
+
+        void setup() {
+            vertices.put(QUAD).position(0);
+            program = createProgram();
+            positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+            textureCoordHandle = GLES20.glGetAttribLocation(program, "aTextureCoord");
+            matrixHandle = GLES20.glGetUniformLocation(program, "uSTMatrix");
+
+            int[] textures = new int[1];
+            GLES20.glGenTextures(1, textures, 0);
+            textureId = textures[0];
+            GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        }
+
+        int textureId() {
+            return textureId;
+        }
+
+        void draw(SurfaceTexture texture) {
+            texture.getTransformMatrix(stMatrix);
+            GLES20.glClearColor(0f, 0f, 0f, 1f);
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+            GLES20.glUseProgram(program);
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+            GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+
+            vertices.position(0);
+            GLES20.glVertexAttribPointer(positionHandle, 2, GLES20.GL_FLOAT, false, 16, vertices);
+            GLES20.glEnableVertexAttribArray(positionHandle);
+            vertices.position(2);
+            GLES20.glVertexAttribPointer(textureCoordHandle, 2, GLES20.GL_FLOAT, false, 16, vertices);
+            GLES20.glEnableVertexAttribArray(textureCoordHandle);
+
+            GLES20.glUniformMatrix4fv(matrixHandle, 1, false, stMatrix, 0);
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+            GLES20.glFinish();
+        }
+
+        void release() {
+            GLES20.glDeleteProgram(program);
+            GLES20.glDeleteTextures(1, new int[]{textureId}, 0);
+        }
+
+        private static int createProgram() {
+            int vertex = compile(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+            int fragment = compile(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+            int program = GLES20.glCreateProgram();
+            GLES20.glAttachShader(program, vertex);
+            GLES20.glAttachShader(program, fragment);
+            GLES20.glLinkProgram(program);
+            int[] status = new int[1];
+            GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+            GLES20.glDeleteShader(vertex);
+            GLES20.glDeleteShader(fragment);
+            if (status[0] != GLES20.GL_TRUE) {
+                String log = GLES20.glGetProgramInfoLog(program);
+                GLES20.glDeleteProgram(program);
+                throw new IllegalStateException("Cannot link program: " + log);
+            }
+            return program;
+        }
+
+        private static int compile(int type, String source) {
+            int shader = GLES20.glCreateShader(type);
+            GLES20.glShaderSource(shader, source);
+            GLES20.glCompileShader(shader);
+            int[] status = new int[1];
+            GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+            if (status[0] == 0) {
+                String log = GLES20.glGetShaderInfoLog(shader);
+                GLES20.glDeleteShader(shader);
+                throw new IllegalStateException("Cannot compile shader: " + log);
+            }
+            return shader;
+        }
+    }
+}
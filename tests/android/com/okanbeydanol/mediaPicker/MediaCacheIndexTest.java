@@ -0,0 +1,114 @@
+package com.okanbeydanol.mediaPicker;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Batches of MediaCacheIndex: the files handed out by a call are never evicted while it (or any
+ * batch that used them) is open, eviction and the index write happen once per batch.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MediaCacheIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private MediaCacheIndex cache;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder("cache");
+        cache = new MediaCacheIndex(dir, 100);
+    }
+
+    @Test
+    public void putsOverBudgetInOneBatchKeepEachOther() throws IOException {
+        long batch = cache.beginBatch();
+        File a = put("a", 60);
+        File b = put("b", 60);
+        File c = put("c", 60);
+        assertTrue(a.exists() && b.exists() && c.exists());
+
+        // Fichiers remis à JS : conservés à la fin du lot, premiers candidats du suivant
+        cache.endBatch(batch);
+        assertTrue(a.exists() && b.exists() && c.exists());
+
+        long next = cache.beginBatch();
+        File d = put("d", 10);
+        cache.endBatch(next);
+        assertFalse(a.exists());
+        assertFalse(b.exists());
+        assertTrue(c.exists());
+        assertTrue(d.exists());
+    }
+
+    @Test
+    public void openBatchPinsEntriesItLookedUp() throws IOException {
+        long old = cache.beginBatch();
+        File a = put("a", 60);
+        cache.endBatch(old);
+
+        long pinned = cache.beginBatch();
+        assertEquals(a, cache.lookup("a"));
+        long other = cache.beginBatch();
+        put("b", 60);
+        cache.endBatch(other);
+        assertTrue(a.exists());
+
+        cache.endBatch(pinned);
+        long next = cache.beginBatch();
+        put("c", 10);
+        cache.endBatch(next);
+        assertFalse(a.exists());
+    }
+
+    @Test
+    public void indexIsWrittenWhenTheBatchEnds() throws IOException {
+        File index = new File(dir, "index.json");
+        long batch = cache.beginBatch();
+        put("a", 10);
+        put("b", 10);
+        assertFalse(index.exists());
+
+        cache.endBatch(batch);
+        assertTrue(index.exists());
+    }
+
+    @Test
+    public void lookupByHashForgetsRemovedAndReplacedEntries() throws IOException {
+        File a = put("a", 10);
+        cache.setHash("a", "sha256:1");
+        assertEquals(a, cache.lookupByHash("sha256:1"));
+
+        cache.remove("a");
+        assertNull(cache.lookupByHash("sha256:1"));
+
+        put("b", 10);
+        cache.setHash("b", "sha256:2");
+        put("b", 20);
+        assertNull(cache.lookupByHash("sha256:2"));
+    }
+
+    private File put(String key, int size) throws IOException {
+        File file = new File(dir, key + "-" + size + ".dat");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[size]);
+        }
+        cache.put(key, file);
+        return file;
+    }
+}
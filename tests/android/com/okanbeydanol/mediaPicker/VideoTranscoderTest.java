@@ -0,0 +1,486 @@
+package com.okanbeydanol.mediaPicker;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.view.Surface;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the VideoTranscoder pipeline on the JVM (Robolectric for MediaFormat / BufferInfo) with stub
+ * extractors, codecs, muxer and surfaces driven by resources/sample-clip.txt, a sample table of a
+ * rotated phone clip. The stub codecs pass timestamps through, so the test checks what the pipeline
+ * does with them: rotation applied once, progress, audio / video interleaving and cancellation.
+ *
+ * tests/android is a JUnit 4 test source root (resources/ on the test classpath) of a module
+ * compiling src/android.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class VideoTranscoderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SampleClip clip;
+    private StubFactory factory;
+    private VideoTranscoder transcoder;
+
+    @Before
+    public void setUp() throws IOException {
+        clip = SampleClip.load("/sample-clip.txt");
+        factory = new StubFactory(clip);
+        transcoder = new VideoTranscoder(null, factory);
+    }
+
+    @Test
+    public void appliesRotationOnceThroughMuxerHint() throws IOException {
+        File dest = folder.newFile("out.mp4");
+        dest.delete();
+
+        VideoTranscoder.Result result = transcoder.transcode(new FileDescriptor(), new FileDescriptor(), dest,
+            new VideoTranscoder.Settings(), new AtomicBoolean(), null);
+
+        assertEquals(90, factory.muxer.orientationHint);
+        assertEquals(0, factory.decoder.format.getInteger("rotation-degrees"));
+        // Encodé dans l'orientation stockée, 1080p ramené à 720p
+        assertEquals(1280, factory.encoder.format.getInteger(MediaFormat.KEY_WIDTH));
+        assertEquals(720, factory.encoder.format.getInteger(MediaFormat.KEY_HEIGHT));
+        // Dimensions affichées
+        assertEquals(720, result.width);
+        assertEquals(1280, result.height);
+        assertEquals(1000, result.durationMs);
+        assertTrue(dest.exists());
+    }
+
+    @Test
+    public void reportsProgressUpToOne() throws IOException {
+        File dest = new File(folder.getRoot(), "out.mp4");
+        List<Double> progress = new ArrayList<>();
+
+        transcoder.transcode(new FileDescriptor(), new FileDescriptor(), dest, new VideoTranscoder.Settings(),
+            new AtomicBoolean(), fraction -> progress.add(fraction));
+
+        assertEquals(clip.samples(0).size() + 1, progress.size());
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue("progress went back at " + i, progress.get(i) >= progress.get(i - 1));
+        }
+        assertEquals(0.9, progress.get(progress.size() - 2), 1e-9);
+        assertEquals(1.0, progress.get(progress.size() - 1), 0);
+    }
+
+    @Test
+    public void interleavesAudioWithVideo() throws IOException {
+        File dest = new File(folder.getRoot(), "out.mp4");
+
+        transcoder.transcode(new FileDescriptor(), new FileDescriptor(), dest, new VideoTranscoder.Settings(),
+            new AtomicBoolean(), null);
+
+        StubMuxer muxer = factory.muxer;
+        assertEquals(2, muxer.tracks.size());
+        int videoSamples = 0;
+        int audioSamples = 0;
+        long previous = -1;
+        for (long[] write : muxer.writes) {
+            assertTrue("sample at " + write[1] + " written after " + previous, write[1] >= previous);
+            previous = write[1];
+            if (write[0] == 0) videoSamples++;
+            else audioSamples++;
+        }
+        assertEquals(clip.samples(0).size(), videoSamples);
+        assertEquals(clip.samples(1).size(), audioSamples);
+        assertTrue(muxer.stopped);
+    }
+
+    @Test
+    public void cancellationRemovesPartialOutput() {
+        File dest = new File(folder.getRoot(), "out.mp4");
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        try {
+            transcoder.transcode(new FileDescriptor(), new FileDescriptor(), dest, new VideoTranscoder.Settings(),
+                cancelled, fraction -> cancelled.set(true));
+            fail("transcode should have been cancelled");
+        } catch (CancellationException expected) {
+            // attendu
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+
+        assertFalse(dest.exists());
+        assertFalse(new File(folder.getRoot(), "out.mp4.part").exists());
+        assertTrue(factory.muxer.released);
+        assertTrue(factory.encoder.released);
+        assertTrue(factory.decoder.released);
+        for (StubExtractor extractor : factory.extractors) assertTrue(extractor.released);
+    }
+
+    // Formats et tables d'échantillons lus dans la ressource
+    private static class SampleClip {
+        final List<Map<String, String>> tracks = new ArrayList<>();
+        final List<List<long[]>> samples = new ArrayList<>();
+
+        static SampleClip load(String resource) throws IOException {
+            SampleClip clip = new SampleClip();
+            try (InputStream in = VideoTranscoderTest.class.getResourceAsStream(resource)) {
+                if (in == null) throw new IOException("Missing resource " + resource);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    String[] fields = line.split("\\s+");
+                    if ("track".equals(fields[0])) {
+                        Map<String, String> track = new LinkedHashMap<>();
+                        track.put(MediaFormat.KEY_MIME, fields[2]);
+                        for (int i = 3; i < fields.length; i++) {
+                            String[] pair = fields[i].split("=", 2);
+                            track.put(pair[0], pair[1]);
+                        }
+                        clip.tracks.add(track);
+                        clip.samples.add(new ArrayList<>());
+                    } else if ("sample".equals(fields[0])) {
+                        clip.samples.get(Integer.parseInt(fields[1])).add(new long[]{
+                            Long.parseLong(fields[2]), Long.parseLong(fields[3]), Long.parseLong(fields[4])
+                        });
+                    }
+                }
+            }
+            return clip;
+        }
+
+        // Nouvelle instance à chaque appel, comme MediaExtractor.getTrackFormat
+        MediaFormat format(int track) {
+            MediaFormat format = new MediaFormat();
+            for (Map.Entry<String, String> entry : tracks.get(track).entrySet()) {
+                if (MediaFormat.KEY_MIME.equals(entry.getKey())) {
+                    format.setString(entry.getKey(), entry.getValue());
+                } else if (MediaFormat.KEY_DURATION.equals(entry.getKey())) {
+                    format.setLong(entry.getKey(), Long.parseLong(entry.getValue()));
+                } else {
+                    format.setInteger(entry.getKey(), Integer.parseInt(entry.getValue()));
+                }
+            }
+            return format;
+        }
+
+        List<long[]> samples(int track) {
+            return samples.get(track);
+        }
+    }
+
+    private static class StubFactory implements VideoTranscoder.CodecFactory {
+        final SampleClip clip;
+        final List<StubExtractor> extractors = new ArrayList<>();
+        StubEncoder encoder;
+        StubDecoder decoder;
+        StubMuxer muxer;
+
+        StubFactory(SampleClip clip) {
+            this.clip = clip;
+        }
+
+        @Override
+        public VideoTranscoder.Extractor createExtractor() {
+            StubExtractor extractor = new StubExtractor(clip);
+            extractors.add(extractor);
+            return extractor;
+        }
+
+        @Override
+        public VideoTranscoder.Codec createEncoder(String mimeType) {
+            encoder = new StubEncoder();
+            return encoder;
+        }
+
+        @Override
+        public VideoTranscoder.Codec createDecoder(String mimeType) {
+            decoder = new StubDecoder();
+            return decoder;
+        }
+
+        @Override
+        public VideoTranscoder.Muxer createMuxer(File output) throws IOException {
+            muxer = new StubMuxer(output);
+            return muxer;
+        }
+
+        @Override
+        public VideoTranscoder.EncoderSurface createEncoderSurface(Surface surface, int width, int height) {
+            return new VideoTranscoder.EncoderSurface() {
+                private long nanos;
+
+                @Override
+                public void setPresentationTime(long nanos) {
+                    this.nanos = nanos;
+                }
+
+                @Override
+                public void swapBuffers() {
+                    encoder.frames.add(nanos / 1000);
+                }
+
+                @Override
+                public void release() {
+                }
+            };
+        }
+
+        @Override
+        public VideoTranscoder.DecoderSurface createDecoderSurface() {
+            return new VideoTranscoder.DecoderSurface() {
+                @Override
+                public Surface getSurface() {
+                    return null;
+                }
+
+                @Override
+                public void awaitNewImage() {
+                }
+
+                @Override
+                public void drawImage() {
+                }
+
+                @Override
+                public void release() {
+                }
+            };
+        }
+    }
+
+    private static class StubExtractor implements VideoTranscoder.Extractor {
+        private final SampleClip clip;
+        private List<long[]> samples = new ArrayList<>();
+        private int cursor;
+        boolean released;
+
+        StubExtractor(SampleClip clip) {
+            this.clip = clip;
+        }
+
+        @Override
+        public void setDataSource(FileDescriptor source) {
+        }
+
+        @Override
+        public int getTrackCount() {
+            return clip.tracks.size();
+        }
+
+        @Override
+        public MediaFormat getTrackFormat(int index) {
+            return clip.format(index);
+        }
+
+        @Override
+        public void selectTrack(int index) {
+            samples = clip.samples(index);
+            cursor = 0;
+        }
+
+        @Override
+        public int readSampleData(ByteBuffer buffer, int offset) {
+            if (cursor >= samples.size()) return -1;
+            int size = (int) samples.get(cursor)[1];
+            buffer.clear();
+            buffer.position(offset);
+            buffer.limit(offset + size);
+            return size;
+        }
+
+        @Override
+        public long getSampleTime() {
+            return cursor < samples.size() ? samples.get(cursor)[0] : -1;
+        }
+
+        @Override
+        public int getSampleFlags() {
+            return cursor < samples.size() && samples.get(cursor)[2] == 1 ? MediaExtractor.SAMPLE_FLAG_SYNC : 0;
+        }
+
+        @Override
+        public boolean advance() {
+            cursor++;
+            return cursor < samples.size();
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    // Base des codecs factices : les tampons de sortie sont rendus dans l'ordre où ils sont produits
+    private abstract static class StubCodec implements VideoTranscoder.Codec {
+        final ArrayDeque<long[]> output = new ArrayDeque<>(); // {pts, size, flags}
+        MediaFormat format;
+        boolean released;
+
+        @Override
+        public void configure(MediaFormat format, Surface surface, int flags) {
+            this.format = format;
+        }
+
+        @Override
+        public Surface createInputSurface() {
+            return null;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public int dequeueInputBuffer(long timeoutUs) {
+            return 0;
+        }
+
+        @Override
+        public ByteBuffer getInputBuffer(int index) {
+            return ByteBuffer.allocate(64 * 1024);
+        }
+
+        @Override
+        public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+            output.add(new long[]{presentationTimeUs, size, flags});
+        }
+
+        @Override
+        public int dequeueOutputBuffer(MediaCodec.BufferInfo info, long timeoutUs) {
+            long[] buffer = output.poll();
+            if (buffer == null) return MediaCodec.INFO_TRY_AGAIN_LATER;
+            info.set(0, (int) buffer[1], buffer[0], (int) buffer[2]);
+            return 0;
+        }
+
+        @Override
+        public ByteBuffer getOutputBuffer(int index) {
+            return ByteBuffer.allocate(64 * 1024);
+        }
+
+        @Override
+        public MediaFormat getOutputFormat() {
+            return format;
+        }
+
+        @Override
+        public void releaseOutputBuffer(int index, boolean render) {
+        }
+
+        @Override
+        public void signalEndOfInputStream() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    private static class StubDecoder extends StubCodec {
+    }
+
+    // Encodeur : une image par swapBuffers, format de sortie annoncé avant la première
+    private static class StubEncoder extends StubCodec {
+        final ArrayDeque<Long> frames = new ArrayDeque<>();
+        private boolean formatSent;
+        private boolean endOfStream;
+
+        @Override
+        public int dequeueOutputBuffer(MediaCodec.BufferInfo info, long timeoutUs) {
+            if (!formatSent) {
+                formatSent = true;
+                return MediaCodec.INFO_OUTPUT_FORMAT_CHANGED;
+            }
+            Long pts = frames.poll();
+            if (pts != null) {
+                info.set(0, 512, pts, 0);
+                return 0;
+            }
+            if (endOfStream) {
+                endOfStream = false;
+                info.set(0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                return 0;
+            }
+            return MediaCodec.INFO_TRY_AGAIN_LATER;
+        }
+
+        @Override
+        public void signalEndOfInputStream() {
+            endOfStream = true;
+        }
+    }
+
+    private static class StubMuxer implements VideoTranscoder.Muxer {
+        final List<MediaFormat> tracks = new ArrayList<>();
+        final List<long[]> writes = new ArrayList<>(); // {track, pts}
+        int orientationHint;
+        boolean stopped;
+        boolean released;
+
+        StubMuxer(File output) throws IOException {
+            if (!output.createNewFile()) throw new IOException("Cannot create " + output);
+        }
+
+        @Override
+        public void setOrientationHint(int degrees) {
+            orientationHint = degrees;
+        }
+
+        @Override
+        public int addTrack(MediaFormat format) {
+            tracks.add(format);
+            return tracks.size() - 1;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void writeSampleData(int track, ByteBuffer data, MediaCodec.BufferInfo info) {
+            writes.add(new long[]{track, info.presentationTimeUs});
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+}
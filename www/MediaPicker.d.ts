@@ -9,7 +9,7 @@ declare namespace CordovaPlugins {
       opts?: MediaPickerOptions,
       successCallback?: (results: MediaPickerResult[]) => void,
       errorCallback?: (error: any) => void
-    ): Promise<MediaPickerResult[]>;
+    ): MediaJobPromise<MediaPickerResult[]>;
 
     /**
      * Retrieves the most recent media items (often used for quick previews).
@@ -19,7 +19,187 @@ declare namespace CordovaPlugins {
       opts?: MediaPickerOptions,
       successCallback?: (results: MediaPickerResult[]) => void,
       errorCallback?: (error: any) => void
-    ): Promise<MediaPickerResult[]>;
+    ): MediaJobPromise<MediaPickerResult[]>;
+
+    /**
+     * Keyset pagination (Android): pass pageToken: null for the first page, then the
+     * nextPageToken of the previous page. Each page costs the same whatever its depth.
+     */
+    getLastMedias(
+      opts: MediaPickerOptions & { pageToken: string | null },
+      successCallback?: (page: MediaPage) => void,
+      errorCallback?: (error: any) => void
+    ): MediaJobPromise<MediaPage>;
+
+    /**
+     * With partialSuccess (Android), items that fail are reported in failures instead of
+     * rejecting the whole call; successful items are kept.
+     */
+    getMedias(
+      opts: MediaPickerOptions & { partialSuccess: true },
+      successCallback?: (result: MediaBatchResult) => void,
+      errorCallback?: (error: any) => void
+    ): MediaJobPromise<MediaBatchResult>;
+
+    /**
+     * Processes again only the failed items of a partialSuccess result, at their original index;
+     * files already in the cache are reused. Android only.
+     * @param failures result.failures of the previous call.
+     * @param opts Processing options (stream, progress, resize, transcode, jobId...).
+     */
+    retry(
+      failures: MediaFailure[],
+      opts?: MediaPickerOptions,
+      successCallback?: (result: MediaBatchResult) => void,
+      errorCallback?: (error: any) => void
+    ): MediaJobPromise<MediaBatchResult>;
+
+    /**
+     * Copies into the app cache a media returned without copy (copyMode 'none' or 'lazy').
+     * Android only.
+     * @param id The media id returned in MediaPickerResult.
+     */
+    materialize(
+      id: string,
+      successCallback?: (result: MaterializeResult) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<MaterializeResult>;
+
+    /**
+     * Reads a byte range of a media with a positioned read. Memory use is bounded by length whatever
+     * the file size. Android only.
+     * @param opts.length Bytes to read (default: 1 MB, max 4 MB); the last chunk is shorter.
+     * @param opts.source 'output' (default): the file the item was returned with, resize/HEIC/transcode
+     *   output included, so sizes match fileSize; 'original': the picked media, from its cached copy or
+     *   straight from the content URI (a source that cannot be read by position is copied first).
+     */
+    readChunk(
+      opts: { id: string; offset?: number; length?: number; source?: MediaChunkSource; encoding: 'arraybuffer' },
+      successCallback?: (data: ArrayBuffer) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<ArrayBuffer>;
+    readChunk(
+      opts: { id: string; offset?: number; length?: number; source?: MediaChunkSource; encoding?: 'base64' },
+      successCallback?: (chunk: MediaChunk) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<MediaChunk>;
+
+    /**
+     * Splits a media into chunks to read with readChunk, e.g. for a resumable upload. Android only.
+     * @param opts.chunkSize Bytes per chunk (default: 1 MB, 16 KB to 4 MB).
+     * @param opts.source Same as readChunk.
+     */
+    getChunkPlan(
+      opts: { id: string; chunkSize?: number; source?: MediaChunkSource },
+      successCallback?: (plan: MediaChunkPlan) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<MediaChunkPlan>;
+
+    /**
+     * Cancels a getMedias / getLastMedias call: in-flight copies, probes and encoders are interrupted,
+     * partial files are removed and the call rejects. Resolves with 1 when the job was running. Android only.
+     * @param jobId promise.jobId, or the jobId returned in callback mode.
+     */
+    cancel(
+      jobId: string,
+      successCallback?: (cancelled: number) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<number>;
+
+    /**
+     * Cancels the calls that are transcoding a video, like cancel(jobId) does for one call: each of
+     * them rejects. Resolves with the number of calls cancelled. Android only.
+     */
+    cancelTranscode(
+      successCallback?: (cancelled: number) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<number>;
+
+    /**
+     * Builds an in-memory index of the library and keeps it up to date from MediaStore change
+     * notifications. While it runs, getLastMedias pages and getMediaCount using the same exclude
+     * are served from memory. Resolves once the index is built. Android only.
+     * @param onChange Called for every change, with MediaStore ids.
+     */
+    startMediaIndex(
+      opts?: { exclude?: MediaExclusionOptions },
+      onChange?: (change: MediaChangeEvent) => void,
+      successCallback?: (result: { count: number }) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<{ count: number }>;
+
+    /**
+     * Stops the index started by startMediaIndex. Android only.
+     */
+    stopMediaIndex(
+      successCallback?: () => void,
+      errorCallback?: (error: any) => void
+    ): Promise<void>;
+
+    /**
+     * Number of media getLastMedias can return, from the index when it covers the same exclude.
+     * Android only.
+     */
+    getMediaCount(
+      opts?: { mediaType?: 'all' | 'images' | 'videos'; exclude?: MediaExclusionOptions } & MediaFilterOptions,
+      successCallback?: (count: number) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<number>;
+
+    /**
+     * Lists the albums (MediaStore buckets) holding images and/or videos, most recent first,
+     * with one grouped query when the provider allows it. Android only.
+     */
+    getAlbums(
+      opts?: { mediaType?: 'all' | 'images' | 'videos'; exclude?: MediaExclusionOptions },
+      successCallback?: (albums: MediaAlbum[]) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<MediaAlbum[]>;
+
+    /**
+     * Changes of the library since a previous call, for incremental sync. Uses MediaStore generations
+     * on Android 11+ and DATE_ADDED / DATE_MODIFIED before; deletions come from a snapshot of the ids
+     * kept for each token. Listing the visible ids is free while startMediaIndex runs; without an index
+     * it costs one O(library) _ID query and is only done on a reset, so other calls report no deletions
+     * (deletionsChecked: false) until a call made while an index runs. Android only.
+     * @param opts.since Token of the previous call; omit it to get a first token.
+     */
+    getMediaChanges(
+      opts?: { since?: string | null; exclude?: MediaExclusionOptions },
+      successCallback?: (changes: MediaChanges) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<MediaChanges>;
+
+    /**
+     * Returns statistics about the media cache. Android only.
+     */
+    getCacheStats(
+      successCallback?: (stats: MediaCacheStats) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<MediaCacheStats>;
+
+    /**
+     * Deletes cached media files. Android only.
+     * @param opts.olderThan Only remove files not used for this many milliseconds (default: remove everything).
+     */
+    clearCache(
+      opts?: { olderThan?: number },
+      successCallback?: (result: { removed: number; freedBytes: number }) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<{ removed: number; freedBytes: number }>;
+
+    /**
+     * Reads EXIF tags of several files in one call; each file is parsed once and the
+     * result is memoized. Android only.
+     * @param opts.uris content:// URIs, file:// URIs or paths.
+     * @param opts.keys Tag names (e.g. "DateTime", "GPSLatitude"), or 'all' (default).
+     * @returns One map per uri, in the same order; null when the file cannot be read.
+     */
+    getExif(
+      opts: { uris: string[]; keys?: string[] | 'all' },
+      successCallback?: (results: Array<{ [tag: string]: string } | null>) => void,
+      errorCallback?: (error: any) => void
+    ): Promise<Array<{ [tag: string]: string } | null>>;
 
     /**
      * Retrieves EXIF data for a specific file.
@@ -41,10 +221,19 @@ declare namespace CordovaPlugins {
  * Result object returned by selection methods.
  */
 export interface MediaPickerResult {
+  /**
+   * Media id for materialize(), readChunk() and getChunkPlan(). On Android it is the content URI,
+   * so it stays valid after an app restart as long as the media exists.
+   */
+  id?: string;
   /** Selection order starting at 0 */
   index: number;
-  /** Local file URI (file://...) pointing to the media */
+  /** Local file URI (file://...) pointing to the media, or the content:// URI when it was not copied */
   uri: string;
+  /** Original content:// URI (Android) */
+  contentUri?: string;
+  /** Whether uri points to a copy in the app cache (Android) */
+  copied?: boolean;
   /** Original file name */
   fileName: string;
   /** File size in bytes */
@@ -59,9 +248,29 @@ export interface MediaPickerResult {
   height?: number;
   /** Duration in seconds (videos only) */
   duration?: number;
+  /** Video rotation in degrees (Android) */
+  rotation?: number;
+  /** Video bitrate in bits per second (Android, when the container was probed) */
+  bitrate?: number;
+  /** Video frame rate in frames per second (Android, when the container was probed) */
+  frameRate?: number;
+  /** file:// URI of the smallest thumbnail (videos, and images when thumbnailSizes is given) */
+  thumbnail?: string;
+  /** Thumbnail file:// URIs keyed by size in pixels (Android) */
+  thumbnails?: { [size: string]: string };
+  /** Date the media was added to the library, in ms (getLastMedias with metadataOnly) */
+  dateAdded?: number;
+  /** Last modification date in ms (getLastMedias with metadataOnly) */
+  dateModified?: number;
+  /** EXIF orientation in degrees (images, getLastMedias with metadataOnly) */
+  orientation?: number;
+  /** "sampled:<hex>" or "sha256:<hex>" content hash (Android, with dedup) */
+  contentHash?: string;
+  /** Indexes of the other items of the call with the same content, left out of the result (Android, with dedup) */
+  duplicates?: number[];
 }
 
-export interface MediaPickerOptions {
+export interface MediaPickerOptions extends MediaFilterOptions {
   /** Maximum number of items the user can select (default: 3) */
   selectionLimit?: number;
   /** Whether to show a loading overlay while processing files (default: true) */
@@ -70,6 +279,258 @@ export interface MediaPickerOptions {
   imageOnly?: boolean;
   /** Filter the type of media displayed (default: 'all') */
   mediaType?: 'all' | 'images' | 'videos';
+  /** Maximum number of items copied/probed at the same time (Android, default: based on CPU cores) */
+  concurrency?: number;
+  /** Deliver each item through onItem as soon as it is ready; the promise still resolves with all items (Android) */
+  stream?: boolean;
+  /** Called for each item when stream is enabled, in completion order (use index to place it) */
+  onItem?: (item: MediaPickerResult) => void;
+  /**
+   * Android: 'eager' copies every file into the app cache (default),
+   * 'lazy' only copies when the provider cannot give a file descriptor,
+   * 'none' never copies; use materialize() to get a file later.
+   */
+  copyMode?: 'eager' | 'lazy' | 'none';
+  /** Report copy progress through onProgress (Android) */
+  progress?: boolean;
+  /** Called while files are copied into the cache when progress is enabled */
+  onProgress?: (event: MediaCopyProgress | MediaTranscodeProgress) => void;
+  /** Buffer size in bytes used when the source cannot be copied with a file channel (Android, default: 256 KB) */
+  copyBufferSize?: number;
+  /** Byte budget of the media cache; least recently used files are deleted above it (Android, default: 512 MB) */
+  cacheMaxBytes?: number;
+  /** Convert HEIC/HEIF images to JPEG when a file is produced (Android, default: true) */
+  convertHeic?: boolean;
+  /** Bounding box of converted HEIC images, aspect ratio preserved (Android, default: original size) */
+  maxWidth?: number;
+  maxHeight?: number;
+  /** JPEG quality of converted HEIC images, 1-100 (Android, default: 95) */
+  heicQuality?: number;
+  /**
+   * Resize/compress images natively before returning them (Android): decoded at the target size
+   * from the original, EXIF orientation applied, encoded straight into the cache. GIFs are left untouched.
+   */
+  resize?: {
+    maxWidth?: number;
+    maxHeight?: number;
+    /** 1-100 (default: 85) */
+    quality?: number;
+    /** Output encoding (default: 'jpeg') */
+    format?: 'jpeg' | 'webp' | 'png';
+  };
+  /** Job handle passed to cancel(); generated when omitted and exposed as promise.jobId */
+  jobId?: string;
+  /** Maximum number of bytes this call copies at the same time, on top of concurrency (Android) */
+  maxInFlightBytes?: number;
+  /**
+   * Re-encode videos to MP4 before returning them (Android). Progress is reported to onProgress
+   * when progress is true; cancel(jobId) or cancelTranscode() stops the call.
+   */
+  transcode?: {
+    /** Shorter side of the output in pixels (default: 720, 0 keeps the source size) */
+    maxHeight?: number;
+    /** Bits per second (default: derived from the output size) */
+    bitrate?: number;
+    /** Output codec (default: 'avc') */
+    codec?: 'avc' | 'hevc';
+  };
+  /** Thumbnail sizes in pixels (longest side); also enables image thumbnails (Android, default: [128] for videos) */
+  thumbnailSizes?: number[];
+  /** Thumbnail encoding (Android, default: 'jpeg') */
+  thumbnailFormat?: 'jpeg' | 'webp';
+  /** Thumbnail quality, 1-100 (Android, default: 80) */
+  thumbnailQuality?: number;
+  /** Probe every video container for bitrate and frame rate, even when MediaStore has its dimensions (Android) */
+  videoDetails?: boolean;
+  /**
+   * Resolve with { items, failures } instead of rejecting the whole call when some items fail (Android).
+   * getLastMedias adds failures to the page.
+   */
+  partialSuccess?: boolean;
+  /**
+   * Hash each item's content and keep one item per content (Android): the first one lists the
+   * others in duplicates, and a copy already cached with the same content is reused.
+   * true or 'sampled': size + three 64 KB blocks, constant cost; 'sha256': every byte, computed during the copy.
+   */
+  dedup?: boolean | 'sampled' | 'sha256';
+  /**
+   * getLastMedias only: fill the result from MediaStore columns and return content URIs,
+   * without copying or probing any file (Android). includeFile: false is an alias.
+   */
+  metadataOnly?: boolean;
+  includeFile?: boolean;
+  /** getLastMedias only: number of items per page (default: 20) */
+  limit?: number;
+  /** getLastMedias only: number of items to skip (ignored when pageToken is given) */
+  offset?: number;
+  /** getLastMedias only: opaque continuation token, null for the first page (Android) */
+  pageToken?: string | null;
+  /**
+   * getLastMedias only: once a full page is served, warm up the metadata and thumbnails of the next
+   * N items on a background thread (Android, max 200). A new query or memory pressure cancels it.
+   */
+  prefetch?: number;
+  /** getLastMedias only: folders and albums to leave out, applied in the MediaStore query (Android) */
+  exclude?: MediaExclusionOptions;
+}
+
+/** getLastMedias / getMediaCount filters, applied in the MediaStore query (Android) */
+export interface MediaFilterOptions {
+  /** Only these albums (MediaAlbum.bucketId) */
+  bucketId?: string | string[];
+  /** Only media added at or after this date, in ms */
+  fromDate?: number;
+  /** Only media added at or before this date, in ms */
+  toDate?: number;
+  /** Only these MIME types; "image/*" style wildcards are allowed */
+  mimeTypes?: string[];
+  /** Minimum file size in bytes */
+  minSize?: number;
+  /** Maximum file size in bytes */
+  maxSize?: number;
+}
+
+export interface MediaAlbum {
+  bucketId: string;
+  name: string;
+  /** Number of media in the album */
+  count: number;
+  /** content:// URI of the most recent media of the album */
+  coverUri: string;
+  coverType: 'image' | 'video';
+  /** Date the most recent media was added, in ms */
+  newest: number;
+}
+
+export interface MediaExclusionOptions {
+  /** Skip files and folders whose name starts with "." (default: true) */
+  hidden?: boolean;
+  /** Skip paths containing one of these fragments, case-insensitive (default: ["vault"]) */
+  keywords?: string[];
+  /** Skip absolute folders, e.g. "/storage/emulated/0/Private" */
+  folders?: string[];
+  /** Skip MediaStore relative paths, e.g. "Pictures/Secret/" */
+  relativePaths?: string[];
+  /** Skip MediaStore bucket (album) ids */
+  bucketIds?: string[];
+}
+
+export interface MediaPage {
+  items: MediaPickerResult[];
+  /** Token of the next page, null when this page is the last one */
+  nextPageToken: string | null;
+  /** Items of the page that could not be processed (partialSuccess only) */
+  failures?: MediaFailure[];
+}
+
+export interface MediaBatchResult {
+  items: MediaPickerResult[];
+  failures: MediaFailure[];
+}
+
+export interface MediaFailure {
+  /** Selection index of the failed item */
+  index: number;
+  /** Original content:// URI */
+  uri: string;
+  code: 'PERMISSION_DENIED' | 'NOT_FOUND' | 'IO_ERROR' | 'CANCELLED' | 'REJECTED' | 'UNKNOWN';
+  message: string;
+}
+
+export interface MediaChanges {
+  /** Pass it as since on the next call */
+  token: string;
+  /** The previous token cannot be used (missing, too old, or MediaStore rebuilt): resync everything */
+  reset: boolean;
+  /** Media added since the token (metadata-only rows) */
+  added: MediaPickerResult[];
+  /** Media modified since the token (metadata-only rows) */
+  modified: MediaPickerResult[];
+  /** content:// URIs of the media removed since the token */
+  deleted: string[];
+  /** false when no index ran: deleted is empty and the deletions come with a later call */
+  deletionsChecked: boolean;
+}
+
+export interface MediaChangeEvent {
+  event: 'mediaChanged';
+  /** MediaStore ids added to the library */
+  inserted: number[];
+  /** MediaStore ids whose row changed (size, date...) */
+  updated: number[];
+  /** MediaStore ids removed, or now excluded */
+  deleted: number[];
+  /** Number of media in the index after the change */
+  count: number;
+}
+
+export interface MediaCacheStats {
+  entries: number;
+  totalBytes: number;
+  maxBytes: number;
+  hits: number;
+  misses: number;
+  /** Served getLastMedias items that were (hits) or were not (misses) warmed up by prefetch */
+  prefetch: {
+    hits: number;
+    misses: number;
+    /** Warmed items not served yet */
+    pending: number;
+    cancelled: number;
+  };
+}
+
+export interface MediaCopyProgress {
+  event: 'progress';
+  /** Index of the item being copied */
+  index: number;
+  bytesCopied: number;
+  /** Total size in bytes, -1 when unknown */
+  totalBytes: number;
+}
+
+/**
+ * Promise of a cancellable call; in callback mode the call returns { jobId } instead.
+ */
+export type MediaJobPromise<T> = Promise<T> & { jobId: string };
+
+export interface MediaTranscodeProgress {
+  event: 'transcode';
+  /** Index of the item being transcoded */
+  index: number;
+  /** Fraction of the video encoded, 0 to 1 */
+  progress: number;
+}
+
+export interface MaterializeResult {
+  id: string;
+  /** file:// path of the cached copy */
+  uri: string;
+  fileSize: number;
+}
+
+/** Which bytes readChunk and getChunkPlan use: the returned file (default) or the picked media */
+export type MediaChunkSource = 'output' | 'original';
+
+export interface MediaChunk {
+  id: string;
+  offset: number;
+  /** Bytes actually read */
+  length: number;
+  /** Size of the whole media in bytes */
+  size: number;
+  /** Whether the chunk reaches the end of the media */
+  eof: boolean;
+  /** Base64 of the bytes */
+  data: string;
+}
+
+export interface MediaChunkPlan {
+  id: string;
+  size: number;
+  chunkSize: number;
+  /** Number of chunks; chunk i starts at i * chunkSize and the last one is shorter */
+  count: number;
 }
 
 interface CordovaPlugins {
@@ -1,21 +1,84 @@
 function MediaPicker() { }
 
+/**
+ * Wraps a success callback so that streamed results ({stream: true} / {progress: true}) are unpacked:
+ * "item" events go to opts.onItem, "progress" and "transcode" events to opts.onProgress,
+ * the final "complete" event to onComplete.
+ */
+function streamHandler(opts, onComplete) {
+    return function (result) {
+        if (result && result.event === 'item') {
+            if (typeof opts.onItem == 'function') opts.onItem(result.item);
+        } else if (result && (result.event === 'progress' || result.event === 'transcode')) {
+            if (typeof opts.onProgress == 'function') opts.onProgress(result);
+        } else if (result && result.event === 'complete') {
+            // keyset pagination resolves with {items, nextPageToken}, partialSuccess with {items, failures}
+            if (!('nextPageToken' in result) && !('failures' in result)) {
+                onComplete(result.items);
+                return;
+            }
+            var value = { items: result.items };
+            if ('nextPageToken' in result) value.nextPageToken = result.nextPageToken;
+            if ('failures' in result) value.failures = result.failures;
+            onComplete(value);
+        } else {
+            onComplete(result);
+        }
+    };
+}
+
+var jobCounter = 0;
+
+// Every getMedias / getLastMedias call carries a jobId (generated unless given) accepted by cancel()
+function withJobId(opts) {
+    var args = Object.assign({}, opts);
+    if (!args.jobId) args.jobId = 'job-' + Date.now().toString(36) + '-' + (++jobCounter);
+    return args;
+}
+
 /**
  * Get medias with options
  * @param {Object} opts
  * @param {number} opts.selectionLimit - max number of medias
  * @param {boolean} opts.showLoader - show overlay loader
+ * @param {number} opts.concurrency - max items processed in parallel (Android)
+ * @param {boolean} opts.stream - deliver each item to opts.onItem as soon as it is ready (Android)
+ * @param {function} opts.onItem - called with each item when streaming
+ * @param {string} opts.copyMode - "eager" (default), "lazy" or "none" (Android)
+ * @param {boolean} opts.progress - report copy progress to opts.onProgress (Android)
+ * @param {number} opts.copyBufferSize - copy buffer size in bytes for non seekable sources (Android)
+ * @param {number} opts.cacheMaxBytes - byte budget of the media cache (Android)
+ * @param {boolean} opts.convertHeic - convert HEIC/HEIF images to JPEG (Android, default: true)
+ * @param {number} opts.maxWidth - max width of converted HEIC images (Android)
+ * @param {number} opts.maxHeight - max height of converted HEIC images (Android)
+ * @param {number} opts.heicQuality - JPEG quality of converted HEIC images (Android, default: 95)
+ * @param {Object} opts.resize - {maxWidth, maxHeight, quality, format}: resize/compress images natively (Android)
+ * @param {string} opts.jobId - job handle for cancel(); generated when omitted, returned as promise.jobId
+ * @param {number} opts.maxInFlightBytes - max bytes copied at the same time by this call (Android)
+ * @param {Object} opts.transcode - {maxHeight, bitrate, codec}: re-encode videos to MP4 (Android)
+ * @param {number[]} opts.thumbnailSizes - thumbnail sizes in pixels, for images and videos (Android)
+ * @param {string} opts.thumbnailFormat - 'jpeg' or 'webp' (Android, default: 'jpeg')
+ * @param {number} opts.thumbnailQuality - thumbnail quality (Android, default: 80)
+ * @param {boolean} opts.videoDetails - probe videos for bitrate and frame rate (Android)
+ * @param {boolean} opts.partialSuccess - resolve with {items, failures} instead of rejecting when some items fail (Android)
+ * @param {boolean|string} opts.dedup - true/'sampled' or 'sha256': add contentHash, keep one item per content
+ *        (the others are listed in duplicates) and reuse cached copies with the same content (Android)
  */
 MediaPicker.prototype.getMedias = function (opts = {}, successCallback, errorCallback) {
 
+    var args = withJobId(opts);
+
     if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
 
-        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'getMedias', [opts]);
+        cordova.exec(streamHandler(opts, successCallback), errorCallback, 'MediaPicker', 'getMedias', [args]);
+        return { jobId: args.jobId };
     }
     else {
-        return new Promise(function (resolve, reject) {
-            cordova.exec(resolve, reject, 'MediaPicker', 'getMedias', [opts]);
+        var promise = new Promise(function (resolve, reject) {
+            cordova.exec(streamHandler(opts, resolve), reject, 'MediaPicker', 'getMedias', [args]);
         });
+        promise.jobId = args.jobId;
+        return promise;
     }
 };
 
@@ -24,16 +87,331 @@ MediaPicker.prototype.getMedias = function (opts = {}, successCallback, errorCal
  * @param {Object} opts
  * @param {number} opts.selectionLimit - max number of medias
  * @param {boolean} opts.showLoader - show overlay loader
+ * @param {boolean} opts.stream - deliver each item to opts.onItem as soon as it is ready (Android)
+ * @param {function} opts.onItem - called with each item when streaming
+ * @param {boolean} opts.metadataOnly - return MediaStore metadata and content URIs without copying files (Android)
+ * @param {Object} opts.exclude - folders hidden from the results: {hidden, keywords, folders, relativePaths, bucketIds} (Android)
+ * @param {string|null} opts.pageToken - keyset pagination: null for the first page, then the previous nextPageToken;
+ *        the result becomes {items, nextPageToken} (Android)
+ * @param {boolean} opts.partialSuccess - add the failed items to the result: {items, failures} (Android)
+ * @param {boolean|string} opts.dedup - true/'sampled' or 'sha256': add contentHash and keep one item per content (Android)
+ * @param {string|string[]} opts.bucketId - only these albums (see getAlbums) (Android)
+ * @param {number} opts.fromDate - only media added at or after this date, in ms (Android)
+ * @param {number} opts.toDate - only media added at or before this date, in ms (Android)
+ * @param {string[]} opts.mimeTypes - only these MIME types, "image/*" style wildcards allowed (Android)
+ * @param {number} opts.minSize - minimum file size in bytes (Android)
+ * @param {number} opts.maxSize - maximum file size in bytes (Android)
+ * @param {number} opts.prefetch - after a full page, warm up metadata and thumbnails of the next N items
+ *        in the background (Android, max 200)
  */
 MediaPicker.prototype.getLastMedias = function (opts = {}, successCallback, errorCallback) {
 
+    var args = withJobId(opts);
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        cordova.exec(streamHandler(opts, successCallback), errorCallback, 'MediaPicker', 'getLastMedias', [args]);
+        return { jobId: args.jobId };
+    }
+    else {
+        var promise = new Promise(function (resolve, reject) {
+            cordova.exec(streamHandler(opts, resolve), reject, 'MediaPicker', 'getLastMedias', [args]);
+        });
+        promise.jobId = args.jobId;
+        return promise;
+    }
+};
+
+/**
+ * Copy into the app cache a media returned without copy (copyMode "none" or "lazy")
+ * @param {string} id - media id returned by getMedias/getLastMedias
+ */
+MediaPicker.prototype.materialize = function (id, successCallback, errorCallback) {
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'materialize', [id]);
+    }
+    else {
+        return new Promise(function (resolve, reject) {
+            cordova.exec(resolve, reject, 'MediaPicker', 'materialize', [id]);
+        });
+    }
+};
+
+/**
+ * Read a byte range of a media (Android), so uploads can stream a file chunk by chunk without loading
+ * it whole. Reads the file the item was returned with (resize/HEIC/transcode output included), or the
+ * original media (cached copy or content URI) when no file was produced or with source: 'original'.
+ * @param {Object} opts
+ * @param {string} opts.id - media id returned by getMedias/getLastMedias
+ * @param {string} opts.source - 'output' (default) or 'original'
+ * @param {number} opts.offset - first byte (default: 0)
+ * @param {number} opts.length - bytes to read (default: 1 MB, max 4 MB); shorter at the end of the file
+ * @param {string} opts.encoding - 'base64' (default): {id, offset, length, size, eof, data};
+ *        'arraybuffer': the bytes as an ArrayBuffer
+ */
+MediaPicker.prototype.readChunk = function (opts = {}, successCallback, errorCallback) {
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'readChunk', [opts]);
+    }
+    else {
+        return new Promise(function (resolve, reject) {
+            cordova.exec(resolve, reject, 'MediaPicker', 'readChunk', [opts]);
+        });
+    }
+};
+
+/**
+ * Split a media into chunks for readChunk (Android): {id, size, chunkSize, count}.
+ * Chunk i starts at i * chunkSize; the last one is shorter.
+ * @param {Object} opts
+ * @param {string} opts.id - media id returned by getMedias/getLastMedias
+ * @param {number} opts.chunkSize - bytes per chunk (default: 1 MB, 16 KB to 4 MB)
+ * @param {string} opts.source - 'output' (default) or 'original', as in readChunk
+ */
+MediaPicker.prototype.getChunkPlan = function (opts = {}, successCallback, errorCallback) {
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'getChunkPlan', [opts]);
+    }
+    else {
+        return new Promise(function (resolve, reject) {
+            cordova.exec(resolve, reject, 'MediaPicker', 'getChunkPlan', [opts]);
+        });
+    }
+};
+
+/**
+ * Process again the items that failed in a partialSuccess result (Android); items are kept at their
+ * original index and files already in the cache are reused. Resolves with {items, failures}.
+ * @param {Object[]} failures - result.failures
+ * @param {Object} opts - same processing options as getMedias (stream, progress, resize, transcode...)
+ */
+MediaPicker.prototype.retry = function (failures, opts = {}, successCallback, errorCallback) {
+
+    var args = withJobId(opts);
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        cordova.exec(streamHandler(opts, successCallback), errorCallback, 'MediaPicker', 'retry', [failures, args]);
+        return { jobId: args.jobId };
+    }
+    else {
+        var promise = new Promise(function (resolve, reject) {
+            cordova.exec(streamHandler(opts, resolve), reject, 'MediaPicker', 'retry', [failures, args]);
+        });
+        promise.jobId = args.jobId;
+        return promise;
+    }
+};
+
+/**
+ * Cancel a getMedias / getLastMedias call (Android): in-flight copies and encoders are interrupted,
+ * partial files removed, and the call rejects. Resolves with 1 when the job was running, 0 otherwise.
+ * @param {string} jobId - promise.jobId (or {jobId} returned in callback mode)
+ */
+MediaPicker.prototype.cancel = function (jobId, successCallback, errorCallback) {
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'cancel', [jobId]);
+    }
+    else {
+        return new Promise(function (resolve, reject) {
+            cordova.exec(resolve, reject, 'MediaPicker', 'cancel', [jobId]);
+        });
+    }
+};
+
+/**
+ * Cancel the calls that are transcoding a video (Android), like cancel(jobId) does for one call:
+ * each of them rejects. Resolves with the number of calls cancelled.
+ */
+MediaPicker.prototype.cancelTranscode = function (successCallback, errorCallback) {
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'cancelTranscode', []);
+    }
+    else {
+        return new Promise(function (resolve, reject) {
+            cordova.exec(resolve, reject, 'MediaPicker', 'cancelTranscode', []);
+        });
+    }
+};
+
+/**
+ * Keep an in-memory index of the library, updated from MediaStore change notifications (Android).
+ * While it runs, getLastMedias pages and getMediaCount with the same exclude are served from memory.
+ * Resolves with {count} once the index is built; then each change calls
+ * onChange({event: 'mediaChanged', inserted, updated, deleted, count}) with MediaStore ids.
+ * @param {Object} opts
+ * @param {Object} opts.exclude - same exclusion rules as getLastMedias
+ * @param {function} onChange - called on every library change
+ */
+MediaPicker.prototype.startMediaIndex = function (opts = {}, onChange, successCallback, errorCallback) {
+
+    function handler(done) {
+        return function (result) {
+            if (result && result.event === 'mediaChanged') {
+                if (typeof onChange == 'function') onChange(result);
+            } else if (result && result.event === 'ready') {
+                done({ count: result.count });
+            }
+        };
+    }
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        return cordova.exec(handler(successCallback), errorCallback, 'MediaPicker', 'startMediaIndex', [opts]);
+    }
+    else {
+        return new Promise(function (resolve, reject) {
+            cordova.exec(handler(resolve), reject, 'MediaPicker', 'startMediaIndex', [opts]);
+        });
+    }
+};
+
+/**
+ * Stop the in-memory index started by startMediaIndex (Android)
+ */
+MediaPicker.prototype.stopMediaIndex = function (successCallback, errorCallback) {
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'stopMediaIndex', []);
+    }
+    else {
+        return new Promise(function (resolve, reject) {
+            cordova.exec(resolve, reject, 'MediaPicker', 'stopMediaIndex', []);
+        });
+    }
+};
+
+/**
+ * Number of images and/or videos getLastMedias can return (Android)
+ * @param {Object} opts
+ * @param {string} opts.mediaType - 'images', 'videos' or 'all' (default)
+ * @param {Object} opts.exclude - same exclusion rules as getLastMedias
+ * Also accepts the getLastMedias filters (bucketId, fromDate, toDate, mimeTypes, minSize, maxSize).
+ */
+MediaPicker.prototype.getMediaCount = function (opts = {}, successCallback, errorCallback) {
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'getMediaCount', [opts]);
+    }
+    else {
+        return new Promise(function (resolve, reject) {
+            cordova.exec(resolve, reject, 'MediaPicker', 'getMediaCount', [opts]);
+        });
+    }
+};
+
+/**
+ * List the albums (MediaStore buckets) with their media count and cover (Android):
+ * [{bucketId, name, count, coverUri, coverType, newest}], most recent first.
+ * @param {Object} opts
+ * @param {string} opts.mediaType - 'images', 'videos' or 'all' (default)
+ * @param {Object} opts.exclude - same exclusion rules as getLastMedias
+ */
+MediaPicker.prototype.getAlbums = function (opts = {}, successCallback, errorCallback) {
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'getAlbums', [opts]);
+    }
+    else {
+        return new Promise(function (resolve, reject) {
+            cordova.exec(resolve, reject, 'MediaPicker', 'getAlbums', [opts]);
+        });
+    }
+};
+
+/**
+ * Library changes since a previous sync (Android): {token, reset, added, modified, deleted}.
+ * added/modified hold metadata-only rows, deleted the content URIs of removed media.
+ * Call without since to get a first token; reset: true means the token can no longer be used
+ * (unknown, too old, or MediaStore rebuilt) and the caller must resync everything.
+ * Added and modified rows come from a MediaStore generation (or date) query. Deletions need the list
+ * of visible ids: it comes from memory while startMediaIndex runs; without an index it is only read
+ * (one O(library) _ID query) on a reset, and other calls return deletionsChecked: false with the
+ * deletions postponed to the next call made while an index runs.
+ * @param {Object} opts
+ * @param {string} opts.since - token returned by the previous call
+ * @param {Object} opts.exclude - same exclusion rules as getLastMedias
+ */
+MediaPicker.prototype.getMediaChanges = function (opts = {}, successCallback, errorCallback) {
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'getMediaChanges', [opts]);
+    }
+    else {
+        return new Promise(function (resolve, reject) {
+            cordova.exec(resolve, reject, 'MediaPicker', 'getMediaChanges', [opts]);
+        });
+    }
+};
+
+/**
+ * Get statistics about the media cache (entries, totalBytes, maxBytes, hits, misses)
+ * and the getLastMedias prefetcher (prefetch: {hits, misses, pending, cancelled})
+ */
+MediaPicker.prototype.getCacheStats = function (successCallback, errorCallback) {
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'getCacheStats', []);
+    }
+    else {
+        return new Promise(function (resolve, reject) {
+            cordova.exec(resolve, reject, 'MediaPicker', 'getCacheStats', []);
+        });
+    }
+};
+
+/**
+ * Clear the media cache
+ * @param {Object} opts
+ * @param {number} opts.olderThan - only remove files not used for this many milliseconds
+ */
+MediaPicker.prototype.clearCache = function (opts = {}, successCallback, errorCallback) {
+
+    if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
+
+        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'clearCache', [opts]);
+    }
+    else {
+        return new Promise(function (resolve, reject) {
+            cordova.exec(resolve, reject, 'MediaPicker', 'clearCache', [opts]);
+        });
+    }
+};
+
+/**
+ * Read EXIF tags of several files in one call (Android)
+ * @param {Object} opts
+ * @param {string[]} opts.uris - content:// URIs, file:// URIs or paths
+ * @param {string[]|string} opts.keys - tag names, or 'all' (default)
+ * @returns one map per uri, in the same order (null when the file cannot be read)
+ */
+MediaPicker.prototype.getExif = function (opts = {}, successCallback, errorCallback) {
+
+    var args = Object.assign({}, opts);
+    if (!Array.isArray(args.keys)) delete args.keys;
+
     if (typeof successCallback == 'function' && typeof errorCallback == 'function') {
 
-        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'getLastMedias', [opts]);
+        return cordova.exec(successCallback, errorCallback, 'MediaPicker', 'getExif', [args]);
     }
     else {
         return new Promise(function (resolve, reject) {
-            cordova.exec(resolve, reject, 'MediaPicker', 'getLastMedias', [opts]);
+            cordova.exec(resolve, reject, 'MediaPicker', 'getExif', [args]);
         });
     }
 };